@@ -100,6 +100,9 @@ tasks.register<Test>("testPropertyBased") {
 
 tasks.register<Test>("testLongRunning") {
     group = "verification"
+    // Benchmarks only print their times, unless they are asked to check or to store them as the new baselines
+    systemProperty("ideafim.benchmark.check", project.hasProperty("checkBenchmarkBaselines"))
+    systemProperty("ideafim.benchmark.update", project.hasProperty("updateBenchmarkBaselines"))
 //    include("**/longrunning/**")
 }
 
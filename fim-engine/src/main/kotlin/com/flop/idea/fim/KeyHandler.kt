@@ -34,6 +34,7 @@ import com.flop.idea.fim.common.CurrentCommandState
 import com.flop.idea.fim.common.DigraphResult
 import com.flop.idea.fim.common.argumentCaptured
 import com.flop.idea.fim.diagnostic.FimLogger
+import com.flop.idea.fim.diagnostic.KeyHandlerStats
 import com.flop.idea.fim.diagnostic.debug
 import com.flop.idea.fim.diagnostic.trace
 import com.flop.idea.fim.diagnostic.fimLogger
@@ -115,6 +116,8 @@ class KeyHandler {
       return
     }
 
+    val startNanos = System.nanoTime()
+    val isTopLevelKey = handleKeyRecursionCount == 0
     injector.messages.clearError()
     val editorState = editor.fimStateMachine
     val commandBuilder = editorState.commandBuilder
@@ -151,7 +154,9 @@ class KeyHandler {
 
           if (node is CommandNode<FimActionsInitiator>) {
             LOG.trace("Node is a command node")
+            val commandNodeStartNanos = System.nanoTime()
             handleCommandNode(editor, context, key, node, editorState)
+            KeyHandlerStats.record(KeyHandlerStats.Phase.COMMAND_NODE, commandNodeStartNanos)
             commandBuilder.addKey(key)
           } else if (node is CommandPartNode<FimActionsInitiator>) {
             LOG.trace("Node is a command part node")
@@ -187,6 +192,9 @@ class KeyHandler {
       handleKeyRecursionCount--
     }
     finishedCommandPreparation(editor, context, editorState, commandBuilder, key, shouldRecord)
+    if (isTopLevelKey) {
+      KeyHandlerStats.record(KeyHandlerStats.Phase.KEY, startNanos)
+    }
   }
 
   fun finishedCommandPreparation(
@@ -200,7 +208,9 @@ class KeyHandler {
     // Do we have a fully entered command at this point? If so, let's execute it.
     if (commandBuilder.isReady) {
       LOG.trace("Ready command builder. Execute command.")
+      val executeStartNanos = System.nanoTime()
       executeCommand(editor, context, editorState)
+      KeyHandlerStats.record(KeyHandlerStats.Phase.EXECUTE_COMMAND, executeStartNanos)
     } else if (commandBuilder.isBad) {
       LOG.trace("Command builder is set to BAD")
       editorState.resetOpPending()
@@ -218,7 +228,12 @@ class KeyHandler {
     }
 
     // This will update immediately, if we're on the EDT (which we are)
-    injector.messages.updateStatusBar()
+    // While a macro is executing, the status bar is updated once, when the playback is finished
+    if (!injector.macro.isExecutingMacro) {
+      val statusBarStartNanos = System.nanoTime()
+      injector.messages.updateStatusBar()
+      KeyHandlerStats.record(KeyHandlerStats.Phase.STATUS_BAR, statusBarStartNanos)
+    }
     LOG.trace("----------- Key Handler Finished -----------")
   }
 
@@ -286,6 +301,8 @@ class KeyHandler {
     }
     mappingState.stopMappingTimer()
 
+    val startNanos = System.nanoTime()
+
     // Save the unhandled key strokes until we either complete or abandon the sequence.
     LOG.trace("Add key to mapping state")
     mappingState.addKey(key)
@@ -299,6 +316,7 @@ class KeyHandler {
         handleCompleteMappingSequence(editor, context, mappingState, mapping, key) ||
         handleAbandonedMappingSequence(editor, mappingState, context)
     LOG.debug { "Finish mapping processing. Return $mappingProcessed" }
+    KeyHandlerStats.record(KeyHandlerStats.Phase.MAPPING, startNanos)
 
     return mappingProcessed
   }
@@ -329,7 +347,7 @@ class KeyHandler {
     // mapping is a prefix, it will get evaluated when the next character is entered.
     // Note that currentlyUnhandledKeySequence is the same as the state after commandState.getMappingKeys().add(key). It
     // would be nice to tidy ths up
-    if (!mapping.isPrefix(mappingState.keys)) {
+    if (!mapping.isPrefix(mappingState)) {
       LOG.debug("There are no mappings that start with the current sequence. Returning false.")
       return false
     }
@@ -381,7 +399,7 @@ class KeyHandler {
   ): Boolean {
     LOG.trace("Processing complete mapping sequence...")
     // The current sequence isn't a prefix, check to see if it's a completed sequence.
-    val currentMappingInfo = mapping.getLayer(mappingState.keys)
+    val currentMappingInfo = mapping.getLayer(mappingState)
     var mappingInfo = currentMappingInfo
     if (mappingInfo == null) {
       LOG.trace("Haven't found any mapping info for the given sequence. Trying to apply mapping to a subsequence.")
@@ -682,7 +700,9 @@ class KeyHandler {
       val cmdAction = command.action
       val name = cmdAction.id
       if (type.isWrite) {
+        val writeStartNanos = System.nanoTime()
         injector.application.runWriteCommand(editor, name, action, action)
+        KeyHandlerStats.record(KeyHandlerStats.Phase.WRITE_ACTION, writeStartNanos)
       } else if (type.isRead) {
         injector.application.runReadCommand(editor, name, action, action)
       } else {
@@ -871,7 +891,9 @@ class KeyHandler {
       if (register != null) {
         injector.registerGroup.selectRegister(register)
       }
+      val startNanos = System.nanoTime()
       injector.actionExecutor.executeFimAction(editor, cmd.action, context, operatorArguments)
+      KeyHandlerStats.recordAction(cmd.action.id, startNanos)
       if (editorState.mode === FimStateMachine.Mode.INSERT || editorState.mode === FimStateMachine.Mode.REPLACE) {
         injector.changeGroup.processCommand(editor, cmd)
       }
@@ -25,6 +25,7 @@ interface EngineEditorHelper {
   fun getApproximateScreenWidth(editor: FimEditor): Int
   fun handleWithReadonlyFragmentModificationHandler(editor: FimEditor, exception: java.lang.Exception)
   fun getLineBuffer(editor: FimEditor, line: Int): CharBuffer
+  fun getLines(editor: FimEditor): FimLines
   fun getVisualLineAtBottomOfScreen(editor: FimEditor): Int
   fun pad(editor: FimEditor, context: ExecutionContext, line: Int, to: Int): String
   fun getLineLength(editor: FimEditor, logicalLine: Int): Int
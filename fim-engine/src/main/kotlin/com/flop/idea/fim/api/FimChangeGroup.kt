@@ -25,6 +25,7 @@ import com.flop.idea.fim.command.FimStateMachine
 import com.flop.idea.fim.common.TextRange
 import com.flop.idea.fim.ex.ranges.LineRange
 import com.flop.idea.fim.group.visual.FimSelection
+import com.flop.idea.fim.helper.LineSorter
 import org.jetbrains.annotations.TestOnly
 import javax.swing.KeyStroke
 
@@ -167,7 +168,7 @@ interface FimChangeGroup {
 
   fun changeNumber(editor: FimEditor, caret: FimCaret, count: Int): Boolean
 
-  fun sortRange(editor: FimEditor, range: LineRange, lineComparator: Comparator<String>): Boolean
+  fun sortRange(editor: FimEditor, range: LineRange, lineSorter: LineSorter): Boolean
 
   fun reset()
 
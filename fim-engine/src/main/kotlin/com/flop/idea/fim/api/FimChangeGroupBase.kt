@@ -213,6 +213,11 @@ abstract class FimChangeGroupBase : FimChangeGroup {
     operatorArguments: OperatorArguments,
   ) {
     val myLastStrokes = lastStrokes ?: return
+    if (fimDocumentListener == null && myLastStrokes.all { it is CharArray }) {
+      // Nothing to replay and nothing records the inserted text, so the repeated text is inserted at once
+      repeatInsertedChars(editor, myLastStrokes, count)
+      return
+    }
     for (caret in editor.nativeCarets()) {
       for (i in 0 until count) {
         for (lastStroke in myLastStrokes) {
@@ -240,6 +245,24 @@ abstract class FimChangeGroupBase : FimChangeGroup {
     }
   }
 
+  /**
+   * Inserts the text of the given strokes count times with a single document change per caret.
+   * The caret and the change position end up where inserting the strokes one by one would leave them.
+   */
+  private fun repeatInsertedChars(editor: FimEditor, chars: List<Any>, count: Int) {
+    if (count <= 0) return
+    val text = StringBuilder()
+    chars.forEach { text.append(it as CharArray) }
+    if (text.isEmpty()) return
+    val lastChunkLength = (chars.last() as CharArray).size
+    val repeated = text.repeat(count)
+    for (caret in editor.nativeCarets()) {
+      val offset = caret.offset.point
+      insertText(editor, caret, offset, repeated)
+      injector.markGroup.setMark(editor, MARK_CHANGE_POS, offset + repeated.length - lastChunkLength)
+    }
+  }
+
   /**
    * This repeats the previous insert count times
    *
@@ -994,6 +1017,10 @@ abstract class FimChangeGroupBase : FimChangeGroup {
   ): Boolean {
     // start my moving the cursor to the very end of the first line
     injector.motion.moveCaret(editor, caret, injector.motion.moveCaretToLineEnd(editor, startLine, true))
+    if (startLine + count <= editor.lineCount()) {
+      joinExistingLines(editor, caret, startLine, count, spaces)
+      return true
+    }
     for (i in 1 until count) {
       val start = injector.motion.moveCaretToLineEnd(editor, caret)
       val trailingWhitespaceStart = injector.motion.moveCaretToLineEndSkipLeadingOffset(
@@ -1018,6 +1045,77 @@ abstract class FimChangeGroupBase : FimChangeGroup {
     return true
   }
 
+  /**
+   * Joins [count] lines that all exist in the document.
+   *
+   * The lines are scanned once and every join is computed the same way as joining them one by one does: with
+   * [spaces], the leading whitespace of every joined line is removed and a space is inserted unless the line joined so
+   * far ends with whitespace or is empty. The joins are then applied from the bottom up, so their offsets stay valid
+   * and only the line breaks and the removed whitespace are changed. Marks on the joined lines move to the joined line,
+   * as with Vim. Many joins are applied as a single bulk update. The caret is left at the last join point.
+   */
+  private fun joinExistingLines(editor: FimEditor, caret: FimCaret, startLine: Int, count: Int, spaces: Boolean) {
+    val text = editor.text()
+    val startOffset = editor.getLineStartOffset(startLine)
+    val joinStarts = IntArray(count - 1)
+    val joinEnds = IntArray(count - 1)
+    val joinSpaces = BooleanArray(count - 1)
+
+    val firstLineEnd = editor.getLineEndOffset(startLine)
+    var joinedLength = firstLineEnd - startOffset
+    var lastChar = if (joinedLength > 0) text[firstLineEnd - 1] else ' '
+    var joinOffset = 0
+    var spaceOffset = -1
+    for (i in 0 until count - 1) {
+      val line = startLine + 1 + i
+      // A single character line never counts as having trailing whitespace
+      val hasTrailingWhitespace = when (joinedLength) {
+        0 -> true
+        1 -> false
+        else -> Character.isWhitespace(lastChar)
+      }
+      val lineEnd = editor.getLineEndOffset(line)
+      var lineStart = editor.getLineStartOffset(line)
+      if (spaces) {
+        while (lineStart < lineEnd && Character.isWhitespace(text[lineStart])) lineStart++
+      }
+
+      joinStarts[i] = editor.getLineEndOffset(line - 1)
+      joinEnds[i] = lineStart
+      joinSpaces[i] = spaces && !hasTrailingWhitespace
+      joinOffset = joinedLength
+      if (joinSpaces[i]) {
+        spaceOffset = joinOffset
+        joinedLength++
+      }
+      joinedLength += lineEnd - lineStart
+      if (lineEnd > lineStart) {
+        lastChar = text[lineEnd - 1]
+      } else if (joinSpaces[i]) {
+        lastChar = ' '
+      }
+    }
+
+    val mutableEditor = editor as MutableFimEditor
+    mutableEditor.executeInBulk(count - 1) {
+      for (i in count - 2 downTo 0) {
+        if (joinSpaces[i]) {
+          mutableEditor.replaceText(Offset(joinStarts[i]), Offset(joinEnds[i]), " ")
+        } else {
+          editor.deleteString(TextRange(joinStarts[i], joinEnds[i]))
+        }
+      }
+    }
+    if (spaceOffset != -1) {
+      injector.markGroup.setMark(editor, MARK_CHANGE_POS, startOffset + spaceOffset)
+    }
+    if (joinSpaces[count - 2]) {
+      injector.motion.moveCaret(editor, caret, startOffset + joinOffset)
+    } else {
+      caret.moveToOffset(startOffset + joinOffset)
+    }
+  }
+
   private fun isPrintableChar(c: Char): Boolean {
     val block = Character.UnicodeBlock.of(c)
     return !Character.isISOControl(c) &&
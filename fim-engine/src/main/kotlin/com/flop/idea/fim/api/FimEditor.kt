@@ -253,6 +253,17 @@ interface MutableFimEditor : FimEditor {
   fun delete(range: FimRange)
   fun addLine(atPosition: EditorLine.Offset): EditorLine.Pointer?
   fun insertText(atPosition: Offset, text: CharSequence)
+
+  /**
+   * Replaces the text between the offsets with a single change
+   */
+  fun replaceText(start: Offset, end: Offset, text: CharSequence)
+
+  /**
+   * Runs the [changeCount] changes done by [action] as a bulk update of the document, if there are enough of them to
+   * make it worth it. Listeners and views are then updated once for all the changes instead of after every change
+   */
+  fun executeInBulk(changeCount: Int, action: () -> Unit)
 }
 
 abstract class LinearEditor : FimEditor {
@@ -0,0 +1,41 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.api
+
+import com.flop.idea.fim.regexp.CharPointer
+
+/**
+ * Line access to a text without copying it.
+ *
+ * Line start offsets are cached by the implementations, so [getLine] only creates a view over the text.
+ * Line numbers past the end of the text refer to an empty line at the end of the text.
+ */
+interface FimLines {
+  val text: CharSequence
+  val lineCount: Int
+
+  fun getLineStartOffset(line: Int): Int
+
+  /**
+   * Offset of the end of the line, excluding the new line character
+   */
+  fun getLineEndOffset(line: Int): Int
+
+  fun getLine(line: Int): CharPointer = CharPointer(text, getLineStartOffset(line), getLineEndOffset(line))
+}
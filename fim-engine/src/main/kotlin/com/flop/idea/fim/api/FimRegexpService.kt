@@ -1,5 +1,12 @@
 package com.flop.idea.fim.api
 
+import com.flop.idea.fim.common.TextRange
+
 interface FimRegexpService {
   fun matches(pattern: String, text: String?, ignoreCase: Boolean = false): Boolean
+
+  /**
+   * Returns the offsets of the first match of the pattern in the text, or null if there is no match
+   */
+  fun findMatch(pattern: String, text: CharSequence, ignoreCase: Boolean = false): TextRange?
 }
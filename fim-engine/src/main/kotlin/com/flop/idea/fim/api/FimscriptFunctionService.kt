@@ -7,6 +7,11 @@ import com.flop.idea.fim.fimscript.model.statements.FunctionDeclaration
 
 interface FimscriptFunctionService {
 
+  /**
+   * Incremented every time a function is stored or deleted, so the results of the function lookup can be cached
+   */
+  val version: Int
+
   fun deleteFunction(name: String, scope: Scope? = null, fimContext: FimLContext)
   fun storeFunction(declaration: FunctionDeclaration)
   fun getFunctionHandler(scope: Scope?, name: String, fimContext: FimLContext): FunctionHandler
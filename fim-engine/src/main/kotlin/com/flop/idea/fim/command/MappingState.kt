@@ -21,6 +21,7 @@ package com.flop.idea.fim.command
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.diagnostic.trace
 import com.flop.idea.fim.diagnostic.fimLogger
+import com.flop.idea.fim.key.KeyMapping
 import com.flop.idea.fim.options.OptionConstants
 import com.flop.idea.fim.options.OptionScope
 import com.flop.idea.fim.fimscript.model.datatypes.FimInt
@@ -47,6 +48,14 @@ class MappingState {
   val keys: Iterable<KeyStroke>
     get() = keyList
 
+  internal val keySequence: List<KeyStroke>
+    get() = keyList
+
+  /**
+   * Position of [keys] in the key mapping, updated on every typed key
+   */
+  val mappingCursor = KeyMapping.Cursor()
+
   var mappingMode = MappingMode.NORMAL
 
   private val timer = Timer((injector.optionService.getOptionValue(OptionScope.GLOBAL, OptionConstants.timeoutlenName) as FimInt).value, null)
@@ -76,6 +85,7 @@ class MappingState {
   fun detachKeys(): List<KeyStroke> {
     val currentKeys = keyList
     keyList = mutableListOf()
+    mappingCursor.reset()
     return currentKeys
   }
 
@@ -83,6 +93,7 @@ class MappingState {
     LOG.trace("Reset mapping sequence")
     stopMappingTimer()
     keyList.clear()
+    mappingCursor.reset()
     // NOTE: We intentionally don't reset mapping mode here
   }
 
@@ -0,0 +1,115 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.diagnostic
+
+/**
+ * Latency of the key handling, collected for every key stroke and shown with `:fimstats`.
+ *
+ * The time is collected per phase of [com.flop.idea.fim.KeyHandler.handleKey] and per executed action, so it's
+ * possible to find which mappings or actions make typing slow.
+ */
+object KeyHandlerStats {
+  enum class Phase(val title: String) {
+    /** The whole processing of a typed key, including all the phases below */
+    KEY("key"),
+
+    /** Mapping lookup of a typed key, including the execution of the keys it is mapped to */
+    MAPPING("mapping"),
+
+    /** Walk of the command tree when a command is found */
+    COMMAND_NODE("command node"),
+
+    /** Execution of a complete command, including the write action or the command it is wrapped into */
+    EXECUTE_COMMAND("execute command"),
+
+    /** Execution of the action of a command */
+    ACTION("action"),
+
+    /** Execution of a write command, including the write action and the command it is wrapped into */
+    WRITE_ACTION("write action"),
+
+    /** Notification of the document listeners of the plugin, recorded for every document change */
+    LISTENERS("listener fan-out"),
+
+    /** Notification of the status bar widgets after a key */
+    STATUS_BAR("status bar"),
+  }
+
+  private val phases = Array(Phase.values().size) { LatencyHistogram() }
+  private val actions = HashMap<String, LatencyHistogram>()
+
+  fun record(phase: Phase, startNanos: Long) {
+    phases[phase.ordinal].record(System.nanoTime() - startNanos)
+  }
+
+  fun recordAction(actionId: String, startNanos: Long) {
+    val nanos = System.nanoTime() - startNanos
+    phases[Phase.ACTION.ordinal].record(nanos)
+    actions.getOrPut(actionId) { LatencyHistogram() }.record(nanos)
+  }
+
+  fun getPhase(phase: Phase): LatencyHistogram = phases[phase.ordinal]
+
+  fun reset() {
+    phases.forEach { it.reset() }
+    actions.clear()
+  }
+
+  /**
+   * Text report of the collected stats. Actions are sorted by the total time spent in them
+   *
+   * @param maxActions the number of actions to include in the report
+   */
+  fun report(maxActions: Int = Int.MAX_VALUE): String {
+    val builder = StringBuilder()
+    builder.append("--- Key handling latency (µs) ---\n")
+    builder.append(header("phase", 20))
+    Phase.values().forEach { builder.append(row(it.title, 20, phases[it.ordinal])) }
+
+    if (actions.isNotEmpty()) {
+      builder.append("\n--- Actions (µs) ---\n")
+      builder.append(header("action", 40))
+      actions.entries
+        .sortedByDescending { it.value.totalNanos }
+        .take(maxActions)
+        .forEach { (id, histogram) -> builder.append(row(id, 40, histogram)) }
+    }
+    return builder.toString()
+  }
+
+  private fun header(name: String, width: Int): String {
+    return name.padEnd(width) + COLUMNS.joinToString("") { it.padStart(10) } + "\n"
+  }
+
+  private fun row(name: String, width: Int, histogram: LatencyHistogram): String {
+    val values = listOf(
+      histogram.count.toString(),
+      micros(histogram.averageNanos),
+      micros(histogram.percentile(50)),
+      micros(histogram.percentile(90)),
+      micros(histogram.percentile(99)),
+      micros(histogram.maxNanos),
+    )
+    return name.padEnd(width) + values.joinToString("") { it.padStart(10) } + "\n"
+  }
+
+  private fun micros(nanos: Long): String = (nanos / 1000).toString()
+
+  private val COLUMNS = listOf("count", "avg", "p50", "p90", "p99", "max")
+}
@@ -0,0 +1,74 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.diagnostic
+
+import kotlin.math.max
+
+/**
+ * Histogram of durations in nanoseconds with power of two buckets.
+ *
+ * Recording doesn't allocate and costs a few arithmetic operations, so it can be done for every key stroke. The
+ * percentiles are approximate: they are reported as the upper bound of the bucket they fall into.
+ * The histogram is not thread-safe, it's expected to be updated on the EDT only.
+ */
+class LatencyHistogram {
+  private val buckets = LongArray(64)
+
+  var count = 0L
+    private set
+  var totalNanos = 0L
+    private set
+  var maxNanos = 0L
+    private set
+
+  val averageNanos: Long
+    get() = if (count == 0L) 0 else totalNanos / count
+
+  fun record(nanos: Long) {
+    val value = max(nanos, 0)
+    buckets[64 - java.lang.Long.numberOfLeadingZeros(value)]++
+    count++
+    totalNanos += value
+    if (value > maxNanos) maxNanos = value
+  }
+
+  /**
+   * Approximate duration that [percent] percent of the recorded durations don't exceed
+   */
+  fun percentile(percent: Int): Long {
+    if (count == 0L) return 0
+    val threshold = (count * percent + 99) / 100
+    var seen = 0L
+    for (i in buckets.indices) {
+      seen += buckets[i]
+      if (seen >= threshold) {
+        val upperBound = if (i == 0) 0 else if (i >= 63) Long.MAX_VALUE else (1L shl i) - 1
+        return minOf(upperBound, maxNanos)
+      }
+    }
+    return maxNanos
+  }
+
+  fun reset() {
+    buckets.fill(0)
+    count = 0
+    totalNanos = 0
+    maxNanos = 0
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.fimscript.model.commands
+
+import com.flop.idea.fim.api.ExecutionContext
+import com.flop.idea.fim.api.FimEditor
+import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.command.OperatorArguments
+import com.flop.idea.fim.diagnostic.KeyHandlerStats
+import com.flop.idea.fim.ex.ExException
+import com.flop.idea.fim.ex.ranges.Ranges
+import com.flop.idea.fim.fimscript.model.ExecutionResult
+import com.flop.idea.fim.helper.expandUser
+import java.io.File
+import java.io.IOException
+
+/**
+ * IdeaFim command
+ *
+ * `:fimstats` shows the key handling latency, `:fimstats {file}` writes the full report to the file and
+ * `:fimstats!` resets the collected stats.
+ */
+data class FimStatsCommand(val ranges: Ranges, val argument: String) : Command.SingleExecution(ranges, argument) {
+  override val argFlags = flags(RangeFlag.RANGE_FORBIDDEN, ArgumentFlag.ARGUMENT_OPTIONAL, Access.READ_ONLY)
+
+  override fun processCommand(editor: FimEditor, context: ExecutionContext, operatorArguments: OperatorArguments): ExecutionResult {
+    val arg = argument.trim()
+    if (arg.startsWith("!")) {
+      KeyHandlerStats.reset()
+      return ExecutionResult.Success
+    }
+
+    if (arg.isEmpty()) {
+      injector.exOutputPanel.getPanel(editor).output(KeyHandlerStats.report(MAX_SHOWN_ACTIONS))
+      return ExecutionResult.Success
+    }
+
+    val file = File(expandUser(arg))
+    try {
+      file.writeText(KeyHandlerStats.report())
+    } catch (e: IOException) {
+      throw ExException(injector.messages.message("E482", file.path))
+    }
+    injector.messages.showStatusBarMessage("\"${file.path}\" written")
+    return ExecutionResult.Success
+  }
+
+  companion object {
+    private const val MAX_SHOWN_ACTIONS = 20
+  }
+}
@@ -26,9 +26,11 @@ import com.flop.idea.fim.command.OperatorArguments
 import com.flop.idea.fim.ex.ExException
 import com.flop.idea.fim.ex.ranges.LineRange
 import com.flop.idea.fim.ex.ranges.Ranges
+import com.flop.idea.fim.options.OptionConstants
+import com.flop.idea.fim.options.OptionScope
+import com.flop.idea.fim.helper.LineSorter
 import com.flop.idea.fim.helper.inBlockSubMode
 import com.flop.idea.fim.fimscript.model.ExecutionResult
-import java.util.*
 
 /**
  * @author Alex Selesse
@@ -39,18 +41,11 @@ data class SortCommand(val ranges: Ranges, val argument: String) : Command.Singl
 
   @Throws(ExException::class)
   override fun processCommand(editor: FimEditor, context: ExecutionContext, operatorArguments: OperatorArguments): ExecutionResult {
-    val arg = argument
-    val nonEmptyArg = arg.trim().isNotEmpty()
-
-    val reverse = nonEmptyArg && "!" in arg
-    val ignoreCase = nonEmptyArg && "i" in arg
-    val number = nonEmptyArg && "n" in arg
-
-    val lineComparator = LineComparator(ignoreCase, number, reverse)
+    val lineSorter = parseArguments(argument)
     if (editor.inBlockSubMode) {
       val primaryCaret = editor.primaryCaret()
       val range = getSortLineRange(editor, primaryCaret)
-      val worked = injector.changeGroup.sortRange(editor, range, lineComparator)
+      val worked = injector.changeGroup.sortRange(editor, range, lineSorter)
       primaryCaret.moveToInlayAwareOffset(
         injector.motion.moveCaretToLineStartSkipLeading(editor, range.startLine)
       )
@@ -60,7 +55,7 @@ data class SortCommand(val ranges: Ranges, val argument: String) : Command.Singl
     var worked = true
     for (caret in editor.nativeCarets()) {
       val range = getSortLineRange(editor, caret)
-      if (!injector.changeGroup.sortRange(editor, range, lineComparator)) {
+      if (!injector.changeGroup.sortRange(editor, range, lineSorter)) {
         worked = false
       }
       caret.moveToInlayAwareOffset(injector.motion.moveCaretToLineStartSkipLeading(editor, range.startLine))
@@ -95,34 +90,56 @@ data class SortCommand(val ranges: Ranges, val argument: String) : Command.Singl
     return normalizedRange
   }
 
-  private class LineComparator(
-    private val myIgnoreCase: Boolean,
-    private val myNumber: Boolean,
-    private val myReverse: Boolean,
-  ) : Comparator<String> {
-
-    override fun compare(o1: String, o2: String): Int {
-      var o1ToCompare = o1
-      var o2ToCompare = o2
-      if (myReverse) {
-        val tmp = o2ToCompare
-        o2ToCompare = o1ToCompare
-        o1ToCompare = tmp
-      }
-      if (myIgnoreCase) {
-        o1ToCompare = o1ToCompare.uppercase(Locale.getDefault())
-        o2ToCompare = o2ToCompare.uppercase(Locale.getDefault())
-      }
-      return if (myNumber) {
-        // About natural sort order - http://www.codinghorror.com/blog/2007/12/sorting-for-humans-natural-sort-order.html
-        val n1 = injector.searchGroup.findDecimalNumber(o1ToCompare)
-        val n2 = injector.searchGroup.findDecimalNumber(o2ToCompare)
-        if (n1 == null) {
-          if (n2 == null) 0 else -1
-        } else {
-          if (n2 == null) 1 else n1.compareTo(n2)
+  /**
+   * Parses `[!] [i] [n] [r] [u] [/{pattern}/]`. Any non-letter can be used to delimit the pattern, an empty pattern
+   * means the last search pattern
+   */
+  private fun parseArguments(arg: String): LineSorter {
+    var reverse = false
+    var ignoreCase = false
+    var number = false
+    var unique = false
+    var sortOnMatch = false
+    var pattern: String? = null
+
+    var i = 0
+    while (i < arg.length) {
+      val c = arg[i]
+      when {
+        c == ' ' || c == '\t' -> Unit
+        c == '!' -> reverse = true
+        c == 'i' -> ignoreCase = true
+        c == 'n' -> number = true
+        c == 'u' -> unique = true
+        c == 'r' -> sortOnMatch = true
+        // Binary, float, locale, octal and hex sorts are not supported yet
+        c in "bflox" -> Unit
+        c == '"' -> break
+        c.isLetter() || pattern != null -> throw ExException("E474: Invalid argument")
+        else -> {
+          val patternEnd = findPatternEnd(arg, i + 1, c)
+          pattern = arg.substring(i + 1, patternEnd).ifEmpty {
+            injector.searchGroup.lastSearchPattern ?: throw ExException(injector.messages.message("e_noprevre"))
+          }
+          i = patternEnd
         }
-      } else o1ToCompare.compareTo(o2ToCompare)
+      }
+      i++
+    }
+
+    val patternIgnoreCase = injector.optionService.isSet(OptionScope.GLOBAL, OptionConstants.ignorecaseName)
+    return LineSorter(reverse, ignoreCase, number, unique, pattern, sortOnMatch && pattern != null, patternIgnoreCase)
+  }
+
+  /**
+   * Returns the index of the closing [delimiter], or the end of [arg] if the pattern is not closed
+   */
+  private fun findPatternEnd(arg: String, start: Int, delimiter: Char): Int {
+    var i = start
+    while (i < arg.length && arg[i] != delimiter) {
+      if (arg[i] == '\\') i++
+      i++
     }
+    return i.coerceAtMost(arg.length)
   }
 }
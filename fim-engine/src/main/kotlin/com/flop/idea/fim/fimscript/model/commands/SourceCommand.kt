@@ -25,6 +25,7 @@ import com.flop.idea.fim.command.OperatorArguments
 import com.flop.idea.fim.ex.ranges.Ranges
 import com.flop.idea.fim.fimscript.model.CommandLineFimLContext
 import com.flop.idea.fim.fimscript.model.ExecutionResult
+import com.flop.idea.fim.helper.expandUser
 import java.io.File
 
 /**
@@ -40,14 +41,4 @@ data class SourceCommand(val ranges: Ranges, val argument: String) : Command.Sin
     injector.statisticsService.addSourcedFile(path)
     return ExecutionResult.Success
   }
-
-  private fun expandUser(path: String): String {
-    if (path.startsWith("~")) {
-      val home = System.getProperty("user.home")
-      if (home != null) {
-        return home + path.substring(1)
-      }
-    }
-    return path
-  }
 }
@@ -26,7 +26,6 @@ import com.flop.idea.fim.fimscript.model.FimLContext
 import com.flop.idea.fim.fimscript.model.expressions.Expression
 import com.flop.idea.fim.fimscript.model.expressions.Scope
 import com.flop.idea.fim.fimscript.model.expressions.SimpleExpression
-import com.flop.idea.fim.fimscript.model.expressions.Variable
 import com.flop.idea.fim.fimscript.model.functions.DefinedFunctionHandler
 import com.flop.idea.fim.fimscript.model.functions.FunctionHandler
 import com.flop.idea.fim.fimscript.model.statements.FunctionFlag
@@ -79,13 +78,8 @@ data class FimFuncref(
       if (dictionary == null) {
         throw ExException("E725: Calling dict function without Dictionary: $name")
       } else {
-        injector.variableService.storeVariable(
-          Variable(Scope.LOCAL_VARIABLE, "self"),
-          dictionary!!,
-          editor,
-          context,
-          handler.function
-        )
+        // a recursive call must not replace "self" of the running call
+        handler.function.getNextFrame().setVariable(Scope.LOCAL_VARIABLE, "self", dictionary!!)
       }
     }
 
@@ -25,6 +25,15 @@ import com.flop.idea.fim.fimscript.model.datatypes.FimString
 
 data class CurlyBracesName(val parts: List<Expression>) : Expression() {
 
+  /**
+   * The name if it doesn't contain any expression in curly braces, so it is the same on every evaluation
+   */
+  val staticName: String? = if (parts.all { it is SimpleExpression && it.data is FimString }) {
+    parts.joinToString(separator = "") { ((it as SimpleExpression).data as FimString).value }
+  } else {
+    null
+  }
+
   override fun evaluate(editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimString {
     return FimString(parts.joinToString(separator = "") { it.evaluate(editor, context, fimContext).asString() })
   }
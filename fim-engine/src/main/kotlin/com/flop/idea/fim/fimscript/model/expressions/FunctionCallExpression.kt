@@ -26,6 +26,7 @@ import com.flop.idea.fim.fimscript.model.FimLContext
 import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
 import com.flop.idea.fim.fimscript.model.datatypes.FimFuncref
 import com.flop.idea.fim.fimscript.model.functions.DefinedFunctionHandler
+import com.flop.idea.fim.fimscript.model.functions.FunctionHandler
 import com.flop.idea.fim.fimscript.model.statements.FunctionFlag
 
 data class FunctionCallExpression(val scope: Scope?, val functionName: CurlyBracesName, val arguments: MutableList<Expression>) :
@@ -33,9 +34,16 @@ data class FunctionCallExpression(val scope: Scope?, val functionName: CurlyBrac
   constructor(scope: Scope?, functionName: String, arguments: MutableList<Expression>) :
     this(scope, CurlyBracesName(listOf(SimpleExpression(functionName))), arguments)
 
+  /**
+   * The handler found by the last call, valid while no function is stored or deleted. Only calls by a name without
+   * curly braces are cached, so the name is the same on every call
+   */
+  private var cachedHandler: FunctionHandler? = null
+  private var cachedVersion = -1
+  private var cachedContext: FimLContext? = null
+
   override fun evaluate(editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimDataType {
-    injector.statisticsService.setIfFunctionCallUsed(true)
-    val handler = injector.functionService.getFunctionHandlerOrNull(scope, functionName.evaluate(editor, context, fimContext).value, fimContext)
+    val handler = getFunctionHandler(editor, context, fimContext)
     if (handler != null) {
       if (handler is DefinedFunctionHandler && handler.function.flags.contains(FunctionFlag.DICT)) {
         throw ExException(
@@ -53,4 +61,24 @@ data class FunctionCallExpression(val scope: Scope?, val functionName: CurlyBrac
     }
     throw ExException("E117: Unknown function: ${if (scope != null) scope.c + ":" else ""}${functionName.evaluate(editor, context, fimContext)}")
   }
+
+  private fun getFunctionHandler(editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FunctionHandler? {
+    val functionService = injector.functionService
+    // script functions are looked up in the script of the context
+    val firstParentContext = fimContext.getFirstParentContext()
+    val cached = cachedHandler
+    if (cached != null && cachedVersion == functionService.version && cachedContext === firstParentContext) {
+      return cached
+    }
+
+    injector.statisticsService.setIfFunctionCallUsed(true)
+    val name = functionName.staticName
+    val handler = functionService.getFunctionHandlerOrNull(scope, name ?: functionName.evaluate(editor, context, fimContext).value, fimContext)
+    if (name != null && handler != null) {
+      cachedHandler = handler
+      cachedVersion = functionService.version
+      cachedContext = firstParentContext
+    }
+    return handler
+  }
 }
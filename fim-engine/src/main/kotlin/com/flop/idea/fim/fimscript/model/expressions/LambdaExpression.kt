@@ -37,6 +37,7 @@ data class LambdaExpression(val args: List<String>, val expr: Expression) : Expr
   override fun evaluate(editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimFuncref {
     val function = FunctionDeclaration(null, getFunctionName(), args, listOf(), buildBody(), false, setOf(FunctionFlag.CLOSURE), true)
     function.fimContext = fimContext
+    function.captureEnclosingFrame()
     return FimFuncref(DefinedFunctionHandler(function), FimList(mutableListOf()), null, FimFuncref.Type.LAMBDA)
   }
 
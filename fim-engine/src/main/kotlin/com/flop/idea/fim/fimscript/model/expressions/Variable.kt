@@ -23,10 +23,17 @@ import com.flop.idea.fim.api.FimEditor
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.fimscript.model.FimLContext
 import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
+import com.flop.idea.fim.fimscript.model.statements.FunctionDeclaration
 
 data class Variable(val scope: Scope?, val name: CurlyBracesName) : Expression() {
   constructor(scope: Scope?, name: String) : this(scope, CurlyBracesName(listOf(SimpleExpression(name))))
 
+  /**
+   * The slot of the "a:" or "l:" variable in the frames of [slotFunction], resolved on the first access
+   */
+  internal var slotFunction: FunctionDeclaration? = null
+  internal var slot = -1
+
   override fun evaluate(editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimDataType {
     return injector.variableService.getNonNullVariableValue(this, editor, context, fimContext)
   }
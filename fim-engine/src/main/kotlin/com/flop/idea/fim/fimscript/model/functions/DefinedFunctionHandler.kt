@@ -51,27 +51,40 @@ data class DefinedFunctionHandler(val function: FunctionDeclaration) : FunctionH
     val exceptionsCaught = mutableListOf<ExException>()
     val isRangeGiven = (ranges?.size() ?: 0) > 0
 
-    if (!isRangeGiven) {
+    // the handler may be reused by a recursive call, so the default range is not stored in it
+    val callRanges = if (isRangeGiven) {
+      ranges!!
+    } else {
       val currentLine = editor.currentCaret().getLogicalPosition().line
-      ranges = Ranges()
-      ranges!!.addRange(
-        arrayOf(
-          LineNumberRange(currentLine, 0, false),
-          LineNumberRange(currentLine, 0, false)
+      Ranges().apply {
+        addRange(
+          arrayOf(
+            LineNumberRange(currentLine, 0, false),
+            LineNumberRange(currentLine, 0, false)
+          )
         )
-      )
+      }
     }
-    initializeFunctionVariables(argumentValues, editor, context, fimContext)
+    // every call has its own frame, so a recursive call doesn't overwrite the variables of the running one
+    val frame = function.createFrame()
+    val arguments = evaluateArguments(argumentValues, editor, context, fimContext)
+    val previousFrame = function.frame
+    function.frame = frame
+    try {
+      initializeFunctionVariables(arguments, callRanges, editor, context)
 
-    if (function.flags.contains(FunctionFlag.RANGE)) {
-      val line = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "firstline"), editor, context, function) as FimInt).value
-      returnValue = executeBodyForLine(line, isRangeGiven, exceptionsCaught, editor, context)
-    } else {
-      val firstLine = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "firstline"), editor, context, function) as FimInt).value
-      val lastLine = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "lastline"), editor, context, function) as FimInt).value
-      for (line in firstLine..lastLine) {
+      if (function.flags.contains(FunctionFlag.RANGE)) {
+        val line = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "firstline"), editor, context, function) as FimInt).value
         returnValue = executeBodyForLine(line, isRangeGiven, exceptionsCaught, editor, context)
+      } else {
+        val firstLine = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "firstline"), editor, context, function) as FimInt).value
+        val lastLine = (injector.variableService.getNonNullVariableValue(Variable(Scope.FUNCTION_VARIABLE, "lastline"), editor, context, function) as FimInt).value
+        for (line in firstLine..lastLine) {
+          returnValue = executeBodyForLine(line, isRangeGiven, exceptionsCaught, editor, context)
+        }
       }
+    } finally {
+      function.frame = previousFrame
     }
 
     if (exceptionsCaught.isNotEmpty()) {
@@ -131,27 +144,19 @@ data class DefinedFunctionHandler(val function: FunctionDeclaration) : FunctionH
     return returnValue
   }
 
-  private fun initializeFunctionVariables(argumentValues: List<Expression>, editor: FimEditor, context: ExecutionContext, functionCallContext: FimLContext) {
+  /**
+   * Evaluates the arguments in the context of the caller, before the frame of the call is entered
+   */
+  private fun evaluateArguments(argumentValues: List<Expression>, editor: FimEditor, context: ExecutionContext, functionCallContext: FimLContext): List<Pair<String, FimDataType>> {
+    val arguments = mutableListOf<Pair<String, FimDataType>>()
     // non-optional function arguments
     for ((index, name) in function.args.withIndex()) {
-      injector.variableService.storeVariable(
-        Variable(Scope.FUNCTION_VARIABLE, name),
-        argumentValues[index].evaluate(editor, context, functionCallContext),
-        editor,
-        context,
-        function
-      )
+      arguments.add(name to argumentValues[index].evaluate(editor, context, functionCallContext))
     }
     // optional function arguments with default values
     for (index in 0 until function.defaultArgs.size) {
       val expressionToStore = if (index + function.args.size < argumentValues.size) argumentValues[index + function.args.size] else function.defaultArgs[index].second
-      injector.variableService.storeVariable(
-        Variable(Scope.FUNCTION_VARIABLE, function.defaultArgs[index].first),
-        expressionToStore.evaluate(editor, context, functionCallContext),
-        editor,
-        context,
-        function
-      )
+      arguments.add(function.defaultArgs[index].first to expressionToStore.evaluate(editor, context, functionCallContext))
     }
     // all the other optional arguments passed to function are stored in a:000 variable
     if (function.hasOptionalArguments) {
@@ -163,21 +168,22 @@ data class DefinedFunctionHandler(val function: FunctionDeclaration) : FunctionH
       } else {
         FimList(mutableListOf())
       }
-      injector.variableService.storeVariable(
-        Variable(Scope.FUNCTION_VARIABLE, "000"),
-        remainingArgs,
-        editor,
-        context,
-        function
-      )
+      arguments.add("000" to remainingArgs)
+    }
+    return arguments
+  }
+
+  private fun initializeFunctionVariables(arguments: List<Pair<String, FimDataType>>, ranges: Ranges, editor: FimEditor, context: ExecutionContext) {
+    for ((name, value) in arguments) {
+      injector.variableService.storeVariable(Variable(Scope.FUNCTION_VARIABLE, name), value, editor, context, function)
     }
     injector.variableService.storeVariable(
       Variable(Scope.FUNCTION_VARIABLE, "firstline"),
-      FimInt(ranges!!.getFirstLine(editor, editor.currentCaret()) + 1), editor, context, function
+      FimInt(ranges.getFirstLine(editor, editor.currentCaret()) + 1), editor, context, function
     )
     injector.variableService.storeVariable(
       Variable(Scope.FUNCTION_VARIABLE, "lastline"),
-      FimInt(ranges!!.getLine(editor, editor.currentCaret()) + 1), editor, context, function
+      FimInt(ranges.getLine(editor, editor.currentCaret()) + 1), editor, context, function
     )
   }
 }
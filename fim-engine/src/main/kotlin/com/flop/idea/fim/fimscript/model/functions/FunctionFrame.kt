@@ -0,0 +1,54 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.fimscript.model.functions
+
+import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
+import com.flop.idea.fim.fimscript.model.expressions.Scope
+import com.flop.idea.fim.fimscript.model.statements.FunctionDeclaration
+import kotlin.math.max
+
+/**
+ * The "a:" and "l:" scope variables of a single call of a function, see ":h scope".
+ *
+ * Every variable name is given a slot by the [function] once, so the variables of a call are stored in an array
+ * instead of a map. A frame of a closure keeps the frame of the enclosing function call as its [parent].
+ */
+class FunctionFrame(val function: FunctionDeclaration, val parent: FunctionFrame?) {
+  private var values = arrayOfNulls<FimDataType>(function.variableSlotCount)
+
+  operator fun get(slot: Int): FimDataType? {
+    return if (slot < values.size) values[slot] else null
+  }
+
+  operator fun set(slot: Int, value: FimDataType) {
+    if (slot >= values.size) {
+      values = values.copyOf(max(slot + 1, values.size * 2))
+    }
+    values[slot] = value
+  }
+
+  fun getVariable(scope: Scope, name: String): FimDataType? {
+    val slot = function.getVariableSlot(scope, name, create = false)
+    return if (slot >= 0) get(slot) else null
+  }
+
+  fun setVariable(scope: Scope, name: String, value: FimDataType) {
+    set(function.getVariableSlot(scope, name, create = true), value)
+  }
+}
@@ -39,9 +39,11 @@ abstract class FunctionHandler {
 
   fun executeFunction(arguments: List<Expression>, editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimDataType {
     checkFunctionCall(arguments)
-    val result = doFunction(arguments, editor, context, fimContext)
-    ranges = null
-    return result
+    try {
+      return doFunction(arguments, editor, context, fimContext)
+    } finally {
+      ranges = null
+    }
   }
 
   private fun checkFunctionCall(arguments: List<Expression>) {
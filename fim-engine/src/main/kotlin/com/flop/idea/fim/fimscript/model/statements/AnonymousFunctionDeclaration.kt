@@ -60,6 +60,7 @@ data class AnonymousFunctionDeclaration(
     }
     val declaration = FunctionDeclaration(null, FimFuncref.anonymousCounter++.toString(), args, defaultArgs, body, replaceExisting, flags + FunctionFlag.DICT, hasOptionalArguments)
     declaration.fimContext = this.fimContext
+    declaration.captureEnclosingFrame()
     container.dictionary[index] = FimFuncref(DefinedFunctionHandler(declaration), FimList(mutableListOf()), container, FimFuncref.Type.FUNCREF)
     container.dictionary[index]
     return ExecutionResult.Success
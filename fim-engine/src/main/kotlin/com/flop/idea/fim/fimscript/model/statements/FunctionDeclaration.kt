@@ -25,9 +25,9 @@ import com.flop.idea.fim.ex.ExException
 import com.flop.idea.fim.fimscript.model.Executable
 import com.flop.idea.fim.fimscript.model.ExecutionResult
 import com.flop.idea.fim.fimscript.model.FimLContext
-import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
 import com.flop.idea.fim.fimscript.model.expressions.Expression
 import com.flop.idea.fim.fimscript.model.expressions.Scope
+import com.flop.idea.fim.fimscript.model.functions.FunctionFrame
 
 data class FunctionDeclaration(
   val scope: Scope?,
@@ -43,11 +43,58 @@ data class FunctionDeclaration(
   var isDeleted = false
 
   /**
-   * we store the "a:" and "l:" scope variables here
+   * The "a:" and "l:" scope variables of the running call, null if the function isn't running.
    * see ":h scope"
    */
-  val functionVariables: MutableMap<String, FimDataType> = mutableMapOf()
-  val localVariables: MutableMap<String, FimDataType> = mutableMapOf()
+  var frame: FunctionFrame? = null
+  private var nextFrame: FunctionFrame? = null
+
+  /**
+   * The frame of the enclosing function call at the time a closure was defined
+   */
+  private var enclosingFrame: FunctionFrame? = null
+
+  private val argumentSlots = HashMap<String, Int>()
+  private val localSlots = HashMap<String, Int>()
+
+  val variableSlotCount: Int
+    get() = argumentSlots.size + localSlots.size
+
+  /**
+   * Returns the index of the "a:" or "l:" variable in the frames of this function, or -1 if it has no slot yet
+   */
+  fun getVariableSlot(scope: Scope, name: String, create: Boolean): Int {
+    val slots = if (scope == Scope.FUNCTION_VARIABLE) argumentSlots else localSlots
+    return slots[name] ?: if (create) variableSlotCount.also { slots[name] = it } else -1
+  }
+
+  /**
+   * The frame of the call that is about to start, e.g. to store "self" of a dictionary function before the call
+   */
+  fun getNextFrame(): FunctionFrame {
+    return nextFrame ?: FunctionFrame(this, enclosingFrame).also { nextFrame = it }
+  }
+
+  fun createFrame(): FunctionFrame {
+    val newFrame = getNextFrame()
+    nextFrame = null
+    return newFrame
+  }
+
+  /**
+   * Remembers the frame of the enclosing function call, so a closure can access its variables after the call returns
+   */
+  fun captureEnclosingFrame() {
+    if (!flags.contains(FunctionFlag.CLOSURE)) return
+    var node: FimLContext = fimContext
+    while (!node.isFirstParentContext()) {
+      if (node is FunctionDeclaration) {
+        enclosingFrame = node.frame
+        return
+      }
+      node = node.getPreviousParentContext()
+    }
+  }
 
   override fun execute(editor: FimEditor, context: ExecutionContext): ExecutionResult {
     injector.statisticsService.setIfFunctionDeclarationUsed(true)
@@ -58,6 +105,7 @@ data class FunctionDeclaration(
     }
 
     body.forEach { it.fimContext = this }
+    captureEnclosingFrame()
     injector.functionService.storeFunction(this)
     return ExecutionResult.Success
   }
@@ -112,6 +112,12 @@ object FimRcService {
     return null
   }
 
+  /**
+   * Executes the ideafimrc file, if there is one.
+   *
+   * The time spent executing it, including the files it sources, is written to idea.log on every start as
+   * `ideafimrc file executed in N ms`. Compare these lines to see how the ideafimrc affects the startup time.
+   */
   @JvmStatic
   fun executeIdeaFimRc() {
     try {
@@ -119,7 +125,9 @@ object FimRcService {
       val ideaFimRc = findIdeaFimRc()
       if (ideaFimRc != null) {
         logger.info("Execute ideafimrc file: " + ideaFimRc.absolutePath)
+        val start = System.nanoTime()
         injector.fimscriptExecutor.executeFile(ideaFimRc)
+        logger.info("ideafimrc file executed in ${(System.nanoTime() - start) / 1_000_000} ms")
         injector.fimrcFileState.saveFileState(ideaFimRc.absolutePath)
       } else {
         logger.info("ideafimrc file isn't found")
@@ -10,8 +10,8 @@ import com.flop.idea.fim.fimscript.model.FimLContext
 import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
 import com.flop.idea.fim.fimscript.model.expressions.Scope
 import com.flop.idea.fim.fimscript.model.expressions.Variable
+import com.flop.idea.fim.fimscript.model.functions.FunctionFrame
 import com.flop.idea.fim.fimscript.model.statements.FunctionDeclaration
-import com.flop.idea.fim.fimscript.model.statements.FunctionFlag
 
 abstract class FimVariableServiceBase : VariableService {
   private var globalVariables: MutableMap<String, FimDataType> = mutableMapOf()
@@ -77,6 +77,14 @@ abstract class FimVariableServiceBase : VariableService {
 
   override fun storeVariable(variable: Variable, value: FimDataType, editor: FimEditor, context: ExecutionContext, fimContext: FimLContext) {
     val scope = variable.scope ?: getDefaultVariableScope(fimContext)
+    if (scope == Scope.FUNCTION_VARIABLE || scope == Scope.LOCAL_VARIABLE) {
+      val function = getFunction(fimContext)
+      val slot = if (function != null) getVariableSlot(variable, scope, function, create = true) else -1
+      if (slot >= 0) {
+        getFrame(function!!)[slot] = value
+        return
+      }
+    }
     val name = variable.name.evaluate(editor, context, fimContext).value
     when (scope) {
       Scope.GLOBAL_VARIABLE -> storeGlobalVariable(name, value)
@@ -92,6 +100,13 @@ abstract class FimVariableServiceBase : VariableService {
 
   override fun getNullableVariableValue(variable: Variable, editor: FimEditor, context: ExecutionContext, fimContext: FimLContext): FimDataType? {
     val scope = variable.scope ?: getDefaultVariableScope(fimContext)
+    if (scope == Scope.FUNCTION_VARIABLE || scope == Scope.LOCAL_VARIABLE) {
+      val frame = getFunction(fimContext)?.frame
+      val slot = if (frame != null) getVariableSlot(variable, scope, frame.function, create = false) else -1
+      // a closure may find the variable in the frames of the enclosing functions
+      val value = if (slot >= 0) frame!![slot] else null
+      if (value != null) return value
+    }
     val name = variable.name.evaluate(editor, context, fimContext).value
     return when (scope) {
       Scope.GLOBAL_VARIABLE -> getGlobalVariableValue(name)
@@ -132,45 +147,51 @@ abstract class FimVariableServiceBase : VariableService {
   }
 
   protected open fun getFunctionVariable(name: String, fimContext: FimLContext): FimDataType? {
-    val visibleVariables = mutableListOf<Map<String, FimDataType>>()
-    var node: FimLContext = fimContext
-    while (!node.isFirstParentContext()) {
-      if (node is FunctionDeclaration) {
-        visibleVariables.add(node.functionVariables)
-        if (!node.flags.contains(FunctionFlag.CLOSURE)) {
-          break
-        }
-      }
-      node = node.getPreviousParentContext()
-    }
+    return getFrameVariable(Scope.FUNCTION_VARIABLE, name, fimContext)
+  }
 
-    visibleVariables.reverse()
-    val functionVariablesMap = mutableMapOf<String, FimDataType>()
-    for (map in visibleVariables) {
-      functionVariablesMap.putAll(map)
+  protected open fun getLocalVariable(name: String, fimContext: FimLContext): FimDataType? {
+    return getFrameVariable(Scope.LOCAL_VARIABLE, name, fimContext)
+  }
+
+  /**
+   * Looks the variable up in the frame of the running function and, for closures, in the frames of the enclosing
+   * function calls
+   */
+  private fun getFrameVariable(scope: Scope, name: String, fimContext: FimLContext): FimDataType? {
+    var frame = getFunction(fimContext)?.frame
+    while (frame != null) {
+      val value = frame.getVariable(scope, name)
+      if (value != null) return value
+      frame = frame.parent
     }
-    return functionVariablesMap[name]
+    return null
   }
 
-  protected open fun getLocalVariable(name: String, fimContext: FimLContext): FimDataType? {
-    val visibleVariables = mutableListOf<Map<String, FimDataType>>()
+  private fun getFunction(fimContext: FimLContext): FunctionDeclaration? {
     var node: FimLContext = fimContext
-    while (!node.isFirstParentContext()) {
-      if (node is FunctionDeclaration) {
-        visibleVariables.add(node.localVariables)
-        if (!node.flags.contains(FunctionFlag.CLOSURE)) {
-          break
-        }
-      }
+    while (!(node.isFirstParentContext() || node is FunctionDeclaration)) {
       node = node.getPreviousParentContext()
     }
+    return node as? FunctionDeclaration
+  }
 
-    visibleVariables.reverse()
-    val localVariablesMap = mutableMapOf<String, FimDataType>()
-    for (map in visibleVariables) {
-      localVariablesMap.putAll(map)
+  /**
+   * Variables stored before the call, e.g. "self" of a dictionary function, go to the frame of the next call
+   */
+  private fun getFrame(function: FunctionDeclaration): FunctionFrame {
+    return function.frame ?: function.getNextFrame()
+  }
+
+  private fun getVariableSlot(variable: Variable, scope: Scope, function: FunctionDeclaration, create: Boolean): Int {
+    if (variable.slotFunction === function) return variable.slot
+    val name = variable.name.staticName ?: return -1
+    val slot = function.getVariableSlot(scope, name, create)
+    if (slot >= 0) {
+      variable.slotFunction = function
+      variable.slot = slot
     }
-    return localVariablesMap[name]
+    return slot
   }
 
   protected open fun getBufferVariable(name: String, editor: FimEditor): FimDataType? {
@@ -199,28 +220,13 @@ abstract class FimVariableServiceBase : VariableService {
   }
 
   protected open fun storeFunctionVariable(name: String, value: FimDataType, fimContext: FimLContext) {
-    var node: FimLContext = fimContext
-    while (!(node.isFirstParentContext() || node is FunctionDeclaration)) {
-      node = node.getPreviousParentContext()
-    }
-
-    if (node is FunctionDeclaration) {
-      node.functionVariables[name] = value
-    } else {
-      throw ExException("E461: Illegal variable name: a:$name")
-    }
+    val function = getFunction(fimContext) ?: throw ExException("E461: Illegal variable name: a:$name")
+    getFrame(function).setVariable(Scope.FUNCTION_VARIABLE, name, value)
   }
 
   protected open fun storeLocalVariable(name: String, value: FimDataType, fimContext: FimLContext) {
-    var node: FimLContext = fimContext
-    while (!(node.isFirstParentContext() || node is FunctionDeclaration)) {
-      node = node.getPreviousParentContext()
-    }
-    if (node is FunctionDeclaration) {
-      node.localVariables[name] = value
-    } else {
-      throw ExException("E461: Illegal variable name: l:$name")
-    }
+    val function = getFunction(fimContext) ?: throw ExException("E461: Illegal variable name: l:$name")
+    getFrame(function).setVariable(Scope.LOCAL_VARIABLE, name, value)
   }
 
   protected open fun storeBufferVariable(name: String, value: FimDataType, editor: FimEditor) {
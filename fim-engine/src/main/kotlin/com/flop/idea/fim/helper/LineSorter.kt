@@ -0,0 +1,142 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.helper
+
+import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.regexp.TextLines
+import java.util.*
+
+/**
+ * Sorts the lines of a text, see "h :sort".
+ *
+ * The sort key of every line is extracted once, before sorting: the case-folded text, the number, or the part of the
+ * line selected by [pattern]. Comparing two lines only compares their keys, so nothing is allocated while sorting, and
+ * large ranges are sorted in parallel. The sorted lines are copied once, into the resulting text.
+ *
+ * @param reverse           sort in reverse order, lines with equal keys keep their order
+ * @param ignoreCase        compare the lines ignoring case
+ * @param number            compare the first decimal number of the lines, lines without a number come first
+ * @param unique            keep only the first of a sequence of identical lines, ignoring case with [ignoreCase]. Whole
+ *                          lines are compared, not their keys
+ * @param pattern           without [sortOnMatch], the text matched by the pattern is skipped and the line is sorted
+ *                          on what comes after the match. Lines without a match have an empty key
+ * @param sortOnMatch       sort on the text matched by [pattern]
+ * @param patternIgnoreCase match [pattern] ignoring case
+ */
+class LineSorter(
+  private val reverse: Boolean,
+  private val ignoreCase: Boolean,
+  private val number: Boolean,
+  private val unique: Boolean,
+  private val pattern: String? = null,
+  private val sortOnMatch: Boolean = false,
+  private val patternIgnoreCase: Boolean = false,
+) {
+  /**
+   * Returns the lines of [text] in sorted order. Lines are separated by `\n` only
+   */
+  fun sort(text: CharSequence): String {
+    val lines = TextLines(text)
+    val keys = Array(lines.lineCount) { createKey(text, lines.getLineStartOffset(it), lines.getLineEndOffset(it)) }
+
+    val comparator = if (reverse) Comparator<LineKey> { o1, o2 -> compareKeys(o2, o1) }
+    else Comparator<LineKey> { o1, o2 -> compareKeys(o1, o2) }
+    // Both sorts are stable
+    if (keys.size >= PARALLEL_SORT_THRESHOLD) Arrays.parallelSort(keys, comparator) else Arrays.sort(keys, comparator)
+
+    val result = StringBuilder(text.length)
+    var previous: LineKey? = null
+    for (key in keys) {
+      if (previous != null) {
+        if (unique && sameLines(text, previous, key)) continue
+        result.append('\n')
+      }
+      result.append(text, key.start, key.end)
+      previous = key
+    }
+    return result.toString()
+  }
+
+  private fun createKey(text: CharSequence, start: Int, end: Int): LineKey {
+    var keyStart = start
+    var keyEnd = end
+    if (pattern != null) {
+      val match = injector.regexpService.findMatch(pattern, text.subSequence(start, end), patternIgnoreCase)
+      when {
+        match == null -> keyEnd = start
+        sortOnMatch -> {
+          keyStart = start + match.startOffset
+          keyEnd = start + match.endOffset
+        }
+        else -> keyStart = start + match.endOffset
+      }
+    }
+
+    if (number) {
+      var digit = keyStart
+      while (digit < keyEnd && text[digit] !in '0'..'9') digit++
+      if (digit == keyEnd) return LineKey(start, end, "", 0, false)
+      val negative = digit > keyStart && text[digit - 1] == '-'
+      return LineKey(start, end, "", parseNumber(text, digit, keyEnd, negative), true)
+    }
+
+    val key = text.substring(keyStart, keyEnd)
+    return LineKey(start, end, if (ignoreCase) key.uppercase(Locale.getDefault()) else key, 0, false)
+  }
+
+  private fun compareKeys(o1: LineKey, o2: LineKey): Int = when {
+    !number -> o1.text.compareTo(o2.text)
+    o1.isNumber != o2.isNumber -> if (o1.isNumber) 1 else -1
+    else -> o1.number.compareTo(o2.number)
+  }
+
+  private fun sameLines(text: CharSequence, o1: LineKey, o2: LineKey): Boolean {
+    if (o1.end - o1.start != o2.end - o2.start) return false
+    for (i in 0 until o1.end - o1.start) {
+      if (!text[o1.start + i].equals(text[o2.start + i], ignoreCase)) return false
+    }
+    return true
+  }
+
+  /**
+   * Parses the digits starting at [start], numbers that don't fit into a long are clamped
+   */
+  private fun parseNumber(text: CharSequence, start: Int, end: Int, negative: Boolean): Long {
+    var value = 0L
+    var i = start
+    while (i < end && text[i] in '0'..'9') {
+      val digit = text[i] - '0'
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        return if (negative) Long.MIN_VALUE else Long.MAX_VALUE
+      }
+      value = value * 10 + digit
+      i++
+    }
+    return if (negative) -value else value
+  }
+
+  /**
+   * A line and its sort key. [text] is the key of a text sort, [number] and [isNumber] are the key of a number sort
+   */
+  private class LineKey(val start: Int, val end: Int, val text: String, val number: Long, val isNumber: Boolean)
+
+  companion object {
+    private const val PARALLEL_SORT_THRESHOLD = 100_000
+  }
+}
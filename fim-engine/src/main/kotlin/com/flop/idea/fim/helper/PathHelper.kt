@@ -0,0 +1,34 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.helper
+
+import java.io.File
+
+/**
+ * Replaces the `~` at the start of the path with the home directory of the user, e.g. for `:source ~/.fimrc`
+ */
+fun expandUser(path: String): String {
+  if (path == "~" || path.startsWith("~/") || path.startsWith("~" + File.separator)) {
+    val home = System.getProperty("user.home")
+    if (home != null) {
+      return home + path.substring(1)
+    }
+  }
+  return path
+}
@@ -18,10 +18,9 @@
 package com.flop.idea.fim.key
 
 import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.command.MappingState
 import com.flop.idea.fim.extension.ExtensionHandler
 import com.flop.idea.fim.fimscript.model.expressions.Expression
-import java.util.function.Consumer
-import java.util.stream.Collectors
 import javax.swing.KeyStroke
 
 /**
@@ -37,32 +36,30 @@ class KeyMapping : Iterable<List<KeyStroke?>?>, KeyMappingLayer {
   private val myKeys: MutableMap<List<KeyStroke>, MappingInfo> = HashMap()
 
   /**
-   * Set the contains all possible prefixes for mappings.
-   * E.g. if there is mapping for "hello", this set will contain "h", "he", "hel", etc.
-   * Multiset is used to correctly remove the mappings.
+   * Trie of all mappings by "from" keys.
+   * A node has children if it's a prefix of some mapping, nodes without a mapping and without children are removed.
    */
-  private val myPrefixes: MutableMap<List<KeyStroke>, Int> = HashMap()
+  private val root = Node()
+
+  /**
+   * "from" keys of all mappings of an owner
+   */
+  private val myOwners: MutableMap<MappingOwner, MutableSet<List<KeyStroke>>> = HashMap()
+
+  /**
+   * Incremented on every modification to invalidate the [Cursor]s
+   */
+  private var version = 0
+
   override fun iterator(): MutableIterator<List<KeyStroke>> {
     return ArrayList(myKeys.keys).iterator()
   }
 
   operator fun get(keys: Iterable<KeyStroke>): MappingInfo? {
     // Having a parameter of Iterable allows for a nicer API, because we know when a given list is immutable.
-    // TODO: Should we change this to be a trie?
     assert(keys is List<*>) { "keys must be of type List<KeyStroke>" }
     val keyStrokes = keys as List<KeyStroke>
-    val mappingInfo = myKeys[keys]
-    if (mappingInfo != null) return mappingInfo
-    if (keyStrokes.size > 3) {
-      if (keyStrokes[0].keyCode == injector.parser.actionKeyStroke.keyCode && keyStrokes[1].keyChar == '(' && keyStrokes[keyStrokes.size - 1].keyChar == ')') {
-        val builder = StringBuilder()
-        for (i in 2 until keyStrokes.size - 1) {
-          builder.append(keyStrokes[i].keyChar)
-        }
-        return ToActionMappingInfo(builder.toString(), keyStrokes, false, MappingOwner.IdeaFim.System)
-      }
-    }
-    return null
+    return findNode(keyStrokes)?.mappingInfo ?: getActionMapping(keyStrokes)
   }
 
   fun put(
@@ -71,8 +68,7 @@ class KeyMapping : Iterable<List<KeyStroke?>?>, KeyMappingLayer {
     extensionHandler: ExtensionHandler,
     recursive: Boolean
   ) {
-    myKeys[ArrayList(fromKeys)] = ToHandlerMappingInfo(extensionHandler, fromKeys, recursive, owner)
-    fillPrefixes(fromKeys)
+    putMapping(fromKeys, ToHandlerMappingInfo(extensionHandler, fromKeys, recursive, owner))
   }
 
   fun put(
@@ -81,8 +77,7 @@ class KeyMapping : Iterable<List<KeyStroke?>?>, KeyMappingLayer {
     owner: MappingOwner,
     recursive: Boolean
   ) {
-    myKeys[ArrayList(fromKeys)] = ToKeysMappingInfo(toKeys, fromKeys, recursive, owner)
-    fillPrefixes(fromKeys)
+    putMapping(fromKeys, ToKeysMappingInfo(toKeys, fromKeys, recursive, owner))
   }
 
   fun put(
@@ -92,96 +87,180 @@ class KeyMapping : Iterable<List<KeyStroke?>?>, KeyMappingLayer {
     originalString: String,
     recursive: Boolean
   ) {
-    myKeys[ArrayList(fromKeys)] =
-      ToExpressionMappingInfo(toExpression, fromKeys, recursive, owner, originalString)
-    fillPrefixes(fromKeys)
+    putMapping(fromKeys, ToExpressionMappingInfo(toExpression, fromKeys, recursive, owner, originalString))
   }
 
-  private fun fillPrefixes(fromKeys: List<KeyStroke>) {
-    val prefix: MutableList<KeyStroke> = ArrayList()
-    val prefixLength = fromKeys.size - 1
-    for (i in 0 until prefixLength) {
-      prefix.add(fromKeys[i])
-      myPrefixes[ArrayList(prefix)] = (myPrefixes[ArrayList(prefix)] ?: 0) + 1
+  private fun putMapping(fromKeys: List<KeyStroke>, mappingInfo: MappingInfo) {
+    val keys = ArrayList(fromKeys)
+    val previous = myKeys.put(keys, mappingInfo)
+    if (previous != null) {
+      removeOwner(previous.owner, keys)
     }
+    myOwners.getOrPut(mappingInfo.owner) { LinkedHashSet() }.add(keys)
+
+    var node = root
+    for (key in keys) {
+      val children = node.children ?: HashMap<KeyStroke, Node>().also { node.children = it }
+      node = children.getOrPut(key) { Node() }
+    }
+    node.mappingInfo = mappingInfo
+    version++
   }
 
   fun delete(owner: MappingOwner) {
-    val toRemove = myKeys.entries.stream()
-      .filter { (_, value): Map.Entry<List<KeyStroke>, MappingInfo> -> value.owner == owner }
-      .collect(Collectors.toList())
-    toRemove.forEach(
-      Consumer { (key, value): Map.Entry<List<KeyStroke>, MappingInfo> ->
-        myKeys.remove(
-          key, value
-        )
-      }
-    )
-    toRemove.map { it.key }.forEach(this::removePrefixes)
+    val keys = myOwners.remove(owner) ?: return
+    for (fromKeys in keys) {
+      myKeys.remove(fromKeys)
+      removeFromTrie(fromKeys)
+    }
   }
 
   fun delete(keys: List<KeyStroke>) {
-    myKeys.remove(keys) ?: return
-    removePrefixes(keys)
+    val mappingInfo = myKeys.remove(keys) ?: return
+    removeOwner(mappingInfo.owner, keys)
+    removeFromTrie(keys)
   }
 
   fun delete() {
     myKeys.clear()
-    myPrefixes.clear()
-  }
-
-  private fun removePrefixes(keys: List<KeyStroke>) {
-    val prefix: MutableList<KeyStroke> = ArrayList()
-    val prefixLength = keys.size - 1
-    for (i in 0 until prefixLength) {
-      prefix.add(keys[i])
-      val existingCount = myPrefixes[prefix]
-      if (existingCount == 1 || existingCount == null) {
-        myPrefixes.remove(prefix)
-      } else {
-        myPrefixes[prefix] = existingCount - 1
-      }
+    myOwners.clear()
+    root.children = null
+    version++
+  }
+
+  private fun removeOwner(owner: MappingOwner, keys: List<KeyStroke>) {
+    val ownerKeys = myOwners[owner] ?: return
+    ownerKeys.remove(keys)
+    if (ownerKeys.isEmpty()) {
+      myOwners.remove(owner)
+    }
+  }
+
+  private fun removeFromTrie(keys: List<KeyStroke>) {
+    val path = ArrayList<Node>(keys.size + 1)
+    var node = root
+    path.add(node)
+    for (key in keys) {
+      node = node.children?.get(key) ?: return
+      path.add(node)
+    }
+    node.mappingInfo = null
+
+    // Remove the nodes that are not a mapping or a prefix any more
+    for (i in keys.indices.reversed()) {
+      val child = path[i + 1]
+      if (child.mappingInfo != null || !child.children.isNullOrEmpty()) break
+      path[i].children?.remove(keys[i])
     }
+    version++
   }
 
   fun getByOwner(owner: MappingOwner): List<Pair<List<KeyStroke>, MappingInfo>> {
-    return myKeys.entries.stream()
-      .filter { (_, value): Map.Entry<List<KeyStroke>, MappingInfo> -> value.owner == owner }
-      .map { (key, value): Map.Entry<List<KeyStroke>, MappingInfo> ->
-        Pair(
-          key, value
-        )
-      }.collect(Collectors.toList())
+    val keys = myOwners[owner] ?: return emptyList()
+    return keys.mapNotNull { fromKeys -> myKeys[fromKeys]?.let { Pair(fromKeys, it) } }
   }
 
   override fun isPrefix(keys: Iterable<KeyStroke>): Boolean {
     // Having a parameter of Iterable allows for a nicer API, because we know when a given list is immutable.
-    // Perhaps we should look at changing this to a trie or something?
     assert(keys is List<*>) { "keys must be of type List<KeyStroke>" }
     val keyList = keys as List<KeyStroke>
     if (keyList.isEmpty()) return false
-    if (myPrefixes.contains(keys)) return true
-    val firstChar = keyList[0].keyCode
-    val lastChar = keyList[keyList.size - 1].keyChar
+    if (!findNode(keyList)?.children.isNullOrEmpty()) return true
+    return isActionPrefix(keyList)
+  }
+
+  /**
+   * Same as [isPrefix], but for the keys being typed. The position in the trie is kept in the [MappingState], so
+   * every new key is a single step down the trie
+   */
+  override fun isPrefix(state: MappingState): Boolean {
+    val keys = state.keySequence
+    if (keys.isEmpty()) return false
+    if (!findNode(keys, state.mappingCursor)?.children.isNullOrEmpty()) return true
+    return isActionPrefix(keys)
+  }
+
+  override fun getLayer(state: MappingState): MappingInfoLayer? {
+    val keys = state.keySequence
+    return findNode(keys, state.mappingCursor)?.mappingInfo ?: getActionMapping(keys)
+  }
+
+  private fun findNode(keys: List<KeyStroke>, cursor: Cursor? = null): Node? {
+    if (cursor != null && cursor.mapping === this && cursor.version == version) {
+      if (cursor.depth == keys.size) return cursor.node
+      if (cursor.depth == keys.size - 1) {
+        val node = cursor.node?.children?.get(keys[keys.size - 1])
+        cursor.moveTo(this, keys.size, node)
+        return node
+      }
+    }
+
+    var node: Node? = root
+    for (key in keys) {
+      node = node?.children?.get(key)
+      if (node == null) break
+    }
+    cursor?.moveTo(this, keys.size, node)
+    return node
+  }
+
+  private fun isActionPrefix(keys: List<KeyStroke>): Boolean {
+    val firstChar = keys[0].keyCode
+    val lastChar = keys[keys.size - 1].keyChar
     return firstChar == injector.parser.actionKeyStroke.keyCode && lastChar != ')'
   }
 
+  private fun getActionMapping(keyStrokes: List<KeyStroke>): MappingInfo? {
+    if (keyStrokes.size > 3) {
+      if (keyStrokes[0].keyCode == injector.parser.actionKeyStroke.keyCode && keyStrokes[1].keyChar == '(' && keyStrokes[keyStrokes.size - 1].keyChar == ')') {
+        val builder = StringBuilder()
+        for (i in 2 until keyStrokes.size - 1) {
+          builder.append(keyStrokes[i].keyChar)
+        }
+        return ToActionMappingInfo(builder.toString(), keyStrokes, false, MappingOwner.IdeaFim.System)
+      }
+    }
+    return null
+  }
+
   fun hasmapto(toKeys: List<KeyStroke?>): Boolean {
-    return myKeys.values.stream()
-      .anyMatch { o: MappingInfo? -> o is ToKeysMappingInfo && o.toKeys == toKeys }
+    return myKeys.values.any { it is ToKeysMappingInfo && it.toKeys == toKeys }
   }
 
   fun getMapTo(toKeys: List<KeyStroke?>): List<Pair<List<KeyStroke>, MappingInfo>> {
-    return myKeys.entries.stream()
-      .filter { (_, value): Map.Entry<List<KeyStroke>, MappingInfo> -> value is ToKeysMappingInfo && value.toKeys == toKeys }
-      .map { (key, value): Map.Entry<List<KeyStroke>, MappingInfo> ->
-        Pair(
-          key, value
-        )
-      }.collect(Collectors.toList())
+    return myKeys.entries
+      .filter { (_, value) -> value is ToKeysMappingInfo && value.toKeys == toKeys }
+      .map { (key, value) -> Pair(key, value) }
   }
 
   override fun getLayer(keys: Iterable<KeyStroke>): MappingInfoLayer? {
     return get(keys)
   }
+
+  internal class Node {
+    var children: HashMap<KeyStroke, Node>? = null
+    var mappingInfo: MappingInfo? = null
+  }
+
+  /**
+   * Position of a typed key sequence in the trie. A null node means that no mapping starts with the sequence
+   */
+  class Cursor {
+    internal var mapping: KeyMapping? = null
+    internal var version = 0
+    internal var depth = 0
+    internal var node: Node? = null
+
+    internal fun moveTo(mapping: KeyMapping, depth: Int, node: Node?) {
+      this.mapping = mapping
+      this.version = mapping.version
+      this.depth = depth
+      this.node = node
+    }
+
+    fun reset() {
+      mapping = null
+      node = null
+    }
+  }
 }
@@ -18,9 +18,17 @@
 
 package com.flop.idea.fim.key
 
+import com.flop.idea.fim.command.MappingState
 import javax.swing.KeyStroke
 
 interface KeyMappingLayer {
   fun isPrefix(keys: Iterable<KeyStroke>): Boolean
   fun getLayer(keys: Iterable<KeyStroke>): MappingInfoLayer?
+
+  /**
+   * Lookups for the keys typed so far. Implementations may keep the lookup position in the [state] to process every
+   * new key incrementally.
+   */
+  fun isPrefix(state: MappingState): Boolean = isPrefix(state.keys)
+  fun getLayer(state: MappingState): MappingInfoLayer? = getLayer(state.keys)
 }
@@ -60,6 +60,34 @@ sealed class MappingInfo(
 
   abstract override fun execute(editor: FimEditor, context: ExecutionContext)
 
+  /**
+   * Feeds the keys to the key handler as a single frame of the key stack, so the keys can also be consumed by the
+   * commands waiting for input
+   *
+   * @param fromIsPrefix whether [fromKeys] is a prefix of [toKeys], in which case the first key is not remapped
+   */
+  protected fun executeKeys(
+    editor: FimEditor,
+    context: ExecutionContext,
+    toKeys: List<KeyStroke>,
+    fromIsPrefix: Boolean,
+  ) {
+    val editorDataContext = injector.executionContextManager.onEditor(editor, context)
+    val keyHandler = KeyHandler.getInstance()
+    keyHandler.keyStack.addKeys(toKeys)
+    try {
+      var first = true
+      while (keyHandler.keyStack.hasStroke()) {
+        val keyStroke = keyHandler.keyStack.feedStroke()
+        val recursive = isRecursive && !(first && fromIsPrefix)
+        keyHandler.handleKey(editor, keyStroke, editorDataContext, recursive, false)
+        first = false
+      }
+    } finally {
+      keyHandler.keyStack.removeFirst()
+    }
+  }
+
   override fun compareTo(other: MappingInfo): Int {
     val size = fromKeys.size
     val otherSize = other.fromKeys.size
@@ -92,22 +120,13 @@ class ToKeysMappingInfo(
   isRecursive: Boolean,
   owner: MappingOwner,
 ) : MappingInfo(fromKeys, isRecursive, owner) {
+  private val fromIsPrefix = KeyHandler.isPrefix(fromKeys, toKeys)
+
   override fun getPresentableString(): String = injector.parser.toKeyNotation(toKeys)
 
   override fun execute(editor: FimEditor, context: ExecutionContext) {
     LOG.debug("Executing 'ToKeys' mapping info...")
-    val editorDataContext = injector.executionContextManager.onEditor(editor, context)
-    val fromIsPrefix = KeyHandler.isPrefix(fromKeys, toKeys)
-    val keyHandler = KeyHandler.getInstance()
-    keyHandler.keyStack.addKeys(toKeys)
-    var first = true
-    while (keyHandler.keyStack.hasStroke()) {
-      val keyStroke = keyHandler.keyStack.feedStroke()
-      val recursive = isRecursive && !(first && fromIsPrefix)
-      keyHandler.handleKey(editor, keyStroke, editorDataContext, recursive, false)
-      first = false
-    }
-    keyHandler.keyStack.removeFirst()
+    executeKeys(editor, context, toKeys, fromIsPrefix)
   }
 
   companion object {
@@ -122,24 +141,33 @@ class ToExpressionMappingInfo(
   owner: MappingOwner,
   private val originalString: String,
 ) : MappingInfo(fromKeys, isRecursive, owner) {
+  /**
+   * Parsed keys of the recent results of the expression. An expression mapping usually evaluates to one of a few
+   * strings, e.g. `v:count ? 'j' : 'gj'`, so the keys don't have to be parsed every time the mapping is used.
+   */
+  private val parsedKeys = object : LinkedHashMap<String, ParsedKeys>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ParsedKeys>?): Boolean {
+      return size > MAX_PARSED_KEYS
+    }
+  }
+
   override fun getPresentableString(): String = originalString
 
   override fun execute(editor: FimEditor, context: ExecutionContext) {
     LOG.debug("Executing 'ToExpression' mapping info...")
-    val editorDataContext = injector.executionContextManager.onEditor(editor, context)
-    val toKeys = injector.parser.parseKeys(toExpression.evaluate(editor, context, CommandLineFimLContext).toString())
-    val fromIsPrefix = KeyHandler.isPrefix(fromKeys, toKeys)
-    var first = true
-    for (keyStroke in toKeys) {
-      val recursive = isRecursive && !(first && fromIsPrefix)
-      val keyHandler = KeyHandler.getInstance()
-      keyHandler.handleKey(editor, keyStroke, editorDataContext, recursive, false)
-      first = false
+    val result = toExpression.evaluate(editor, context, CommandLineFimLContext).toString()
+    val keys = parsedKeys.getOrPut(result) {
+      val toKeys = injector.parser.parseKeys(result)
+      ParsedKeys(toKeys, KeyHandler.isPrefix(fromKeys, toKeys))
     }
+    executeKeys(editor, context, keys.toKeys, keys.fromIsPrefix)
   }
 
+  private class ParsedKeys(val toKeys: List<KeyStroke>, val fromIsPrefix: Boolean)
+
   companion object {
     private val LOG = fimLogger<ToExpressionMappingInfo>()
+    private const val MAX_PARSED_KEYS = 16
   }
 }
 
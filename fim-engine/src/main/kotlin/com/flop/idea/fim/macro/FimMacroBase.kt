@@ -39,12 +39,23 @@ abstract class FimMacroBase : FimMacro {
       playbackKeys(editor, context, 0, count)
     } finally {
       --macroDepth
+      if (macroDepth == 0) {
+        onPlaybackFinished(editor)
+      }
     }
 
     lastRegister = reg
     return true
   }
 
+  /**
+   * Called when the outermost macro playback is finished. UI updates that are skipped while a macro is executing
+   * should be done here.
+   */
+  protected open fun onPlaybackFinished(editor: FimEditor) {
+    injector.messages.updateStatusBar()
+  }
+
   /**
    * This plays back the last register that was executed, if any.
    *
@@ -4,6 +4,7 @@ import com.flop.idea.fim.api.ExecutionContext
 import com.flop.idea.fim.api.FimCaret
 import com.flop.idea.fim.api.FimEditor
 import com.flop.idea.fim.api.FimLogicalPosition
+import com.flop.idea.fim.api.MutableFimEditor
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.OperatorArguments
 import com.flop.idea.fim.command.SelectionType
@@ -11,6 +12,7 @@ import com.flop.idea.fim.command.FimStateMachine
 import com.flop.idea.fim.command.isBlock
 import com.flop.idea.fim.command.isChar
 import com.flop.idea.fim.command.isLine
+import com.flop.idea.fim.common.Offset
 import com.flop.idea.fim.common.TextRange
 import com.flop.idea.fim.helper.firstOrNull
 import com.flop.idea.fim.helper.mode
@@ -254,15 +256,20 @@ abstract class FimPutBase : FimPut {
     val lineCount = injector.engineEditorHelper.getLineBreakCount(text) + 1
     if (currentLine + lineCount >= editor.nativeLineCount()) {
       val limit = currentLine + lineCount - editor.nativeLineCount()
-      for (i in 0 until limit) {
-        caret.moveToOffset(editor.fileSize().toInt())
-        injector.changeGroup.insertText(editor, caret, "\n")
+      if (limit > 0) {
+        injector.changeGroup.insertText(editor, caret, editor.fileSize().toInt(), "\n".repeat(limit))
       }
     }
 
+    // The offsets of all segments are computed against the unchanged document. The segments are then inserted from the
+    // bottom up in a single bulk update, so an insert never moves the offsets of the ones still to be done and no
+    // existing text is replaced.
     val maxLen = getMaxSegmentLength(text)
     val tokenizer = StringTokenizer(text, "\n")
-    var endOffset = startOffset
+    val insertOffsets = ArrayList<Int>()
+    val insertTexts = ArrayList<StringBuilder>()
+    var changePos = -1
+    var insertedLength = 0
     while (tokenizer.hasMoreTokens()) {
       var segment = tokenizer.nextToken()
       var origSegment = segment
@@ -275,29 +282,43 @@ abstract class FimPutBase : FimPut {
         }
       }
 
-      val pad = injector.engineEditorHelper.pad(editor, context, currentLine, currentColumn)
-
-      val insertOffset = editor.logicalPositionToOffset(FimLogicalPosition(currentLine, currentColumn))
-      caret.moveToOffset(insertOffset)
-      val insertedText = origSegment + segment.repeat(count - 1)
-      injector.changeGroup.insertText(editor, caret, insertedText)
-      endOffset += insertedText.length
-
-      if (mode == FimStateMachine.SubMode.VISUAL_LINE) {
-        caret.moveToOffset(endOffset)
-        injector.changeGroup.insertText(editor, caret, "\n")
-        ++endOffset
+      val insertOffset = if (mode == FimStateMachine.SubMode.VISUAL_LINE) {
+        // Every segment becomes a new line, they are all inserted before the current line
+        insertOffsets.firstOrNull() ?: editor.getLineStartOffset(currentLine)
       } else {
-        if (pad.isNotEmpty()) {
-          caret.moveToOffset(insertOffset)
-          injector.changeGroup.insertText(editor, caret, pad)
-          endOffset += pad.length
-        }
+        editor.logicalPositionToOffset(FimLogicalPosition(currentLine, currentColumn))
+      }
+      if (insertOffsets.lastOrNull() != insertOffset) {
+        insertOffsets.add(insertOffset)
+        insertTexts.add(StringBuilder())
       }
+      val insertText = insertTexts.last()
+      val startLength = insertText.length
+      // Everything inserted so far lies before this offset, so this is where the piece ends up after all the inserts
+      changePos = insertOffset + insertedLength
+
+      val pad = if (mode == FimStateMachine.SubMode.VISUAL_LINE) ""
+      else injector.engineEditorHelper.pad(editor, context, currentLine, currentColumn)
+      insertText.append(pad).append(origSegment)
+      for (i in 1 until count) insertText.append(segment)
+      if (mode == FimStateMachine.SubMode.VISUAL_LINE) {
+        changePos += insertText.length - startLength
+        insertText.append('\n')
+      }
+      insertedLength += insertText.length - startLength
 
       ++currentLine
     }
 
+    val mutableEditor = editor as MutableFimEditor
+    mutableEditor.executeInBulk(insertOffsets.size) {
+      for (i in insertOffsets.indices.reversed()) {
+        mutableEditor.insertText(Offset(insertOffsets[i]), insertTexts[i])
+      }
+    }
+    if (changePos != -1) injector.markGroup.setMark(editor, MARK_CHANGE_POS, changePos)
+    var endOffset = startOffset + insertedLength
+
     if (indent) endOffset = doIndent(editor, caret, context, startOffset, endOffset)
     moveCaretToEndPosition(editor, caret, startOffset, endOffset, type, mode, cursorAfter)
 
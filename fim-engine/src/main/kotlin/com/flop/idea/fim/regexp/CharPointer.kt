@@ -26,6 +26,11 @@ class CharPointer {
   private var pointer = 0
   private var readonly: Boolean
 
+  /**
+   * End of the visible part of [seq], or -1 if the whole sequence is visible. The sequence may grow when it's mutable
+   */
+  private var limit = -1
+
   constructor(text: String) {
     seq = text
     readonly = true
@@ -41,12 +46,26 @@ class CharPointer {
     readonly = false
   }
 
+  /**
+   * Read-only view of the [start], [end] part of [text], e.g. a line of a document. The text is not copied
+   */
+  constructor(text: CharSequence, start: Int, end: Int) {
+    seq = text
+    readonly = true
+    pointer = start
+    limit = end
+  }
+
   private constructor(ptr: CharPointer, offset: Int) {
     seq = ptr.seq
     readonly = ptr.readonly
+    limit = ptr.limit
     pointer = ptr.pointer + offset
   }
 
+  private val length: Int
+    get() = if (limit < 0) seq.length else limit
+
   fun pointer(): Int {
     return pointer
   }
@@ -91,6 +110,7 @@ class CharPointer {
     seq = ptr.seq
     pointer = ptr.pointer
     readonly = ptr.readonly
+    limit = ptr.limit
     return this
   }
 
@@ -107,12 +127,13 @@ class CharPointer {
 
   fun strlen(): Int {
     if (end()) return 0
-    for (i in pointer until seq.length) {
+    val len = length
+    for (i in pointer until len) {
       if (seq[i] == '\u0000') {
         return i - pointer
       }
     }
-    return seq.length - pointer
+    return len - pointer
   }
 
   fun strncmp(str: String, len: Int): Int {
@@ -147,7 +168,7 @@ class CharPointer {
     if (end()) {
       return null
     }
-    val len = seq.length
+    val len = length
     for (i in pointer until len) {
       val ch = seq[i]
       if (ch == '\u0000') {
@@ -165,7 +186,7 @@ class CharPointer {
     if (end()) {
       return null
     }
-    val len = seq.length
+    val len = length
     val cc = c.uppercaseChar()
     c = c.lowercaseChar()
     for (i in pointer until len) {
@@ -180,12 +201,63 @@ class CharPointer {
     return null
   }
 
+  /**
+   * Checks if [str] occurs in the text at or after [offset] from the current position. Doesn't allocate
+   */
+  fun contains(str: String, offset: Int, ignoreCase: Boolean): Boolean {
+    if (str.isEmpty()) return true
+    val from = pointer + offset
+    // indexOf can't be bounded, so it's only used when the whole string is visible. Otherwise a view of a single line
+    // would search the rest of the text
+    if (!ignoreCase && limit < 0 && seq is String) {
+      return (seq as String).indexOf(str, from) != -1
+    }
+    val last = length - str.length
+    var i = from
+    while (i <= last) {
+      var j = 0
+      while (j < str.length && charsEqual(seq[i + j], str[j], ignoreCase)) {
+        j++
+      }
+      if (j == str.length) {
+        return true
+      }
+      i++
+    }
+    return false
+  }
+
+  /**
+   * Finds the first of [chars] at or after [offset] from the current position, stopping at NUL.
+   *
+   * @return the offset of the found char relative to the current position, or -1
+   */
+  fun indexOfAny(chars: String, offset: Int, ignoreCase: Boolean): Int {
+    val len = length
+    for (i in pointer + offset until len) {
+      val ch = seq[i]
+      if (ch == '\u0000') {
+        return -1
+      }
+      for (c in chars) {
+        if (charsEqual(ch, c, ignoreCase)) {
+          return i - pointer
+        }
+      }
+    }
+    return -1
+  }
+
+  private fun charsEqual(c1: Char, c2: Char, ignoreCase: Boolean): Boolean {
+    return c1 == c2 || ignoreCase && (c1.lowercaseChar() == c2.lowercaseChar() || c1.uppercaseChar() == c2.uppercaseChar())
+  }
+
   val isNul: Boolean
     get() = charAt() == '\u0000'
 
   @JvmOverloads
   fun end(offset: Int = 0): Boolean {
-    return pointer + offset >= seq.length
+    return pointer + offset >= length
   }
 
   fun OP(): Int {
@@ -227,7 +299,7 @@ class CharPointer {
   }
 
   override fun hashCode(): Int {
-    return Objects.hash(seq, pointer)
+    return 31 * System.identityHashCode(seq) + pointer
   }
 
   fun skipWhitespaces() {
@@ -245,7 +317,7 @@ class CharPointer {
     }
 
   private fun normalize(pos: Int): Int {
-    return Math.min(seq.length, pos)
+    return Math.min(length, pos)
   }
 
   override fun toString(): String {
@@ -0,0 +1,63 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.regexp
+
+import com.flop.idea.fim.api.FimLines
+
+/**
+ * Lines of an immutable text, e.g. a snapshot of a document.
+ *
+ * Allows to match a regexp against the text without access to the editor, so it can be done on any thread.
+ * Lines are split by `\n` only, the same way as in the document. Line numbers past the end of the text refer to an
+ * empty line at the end of the text.
+ */
+class TextLines(override val text: CharSequence) : FimLines {
+  private val lineStarts: IntArray
+
+  init {
+    var count = 1
+    for (i in 0 until text.length) {
+      if (text[i] == '\n') count++
+    }
+    lineStarts = IntArray(count)
+    var line = 1
+    for (i in 0 until text.length) {
+      if (text[i] == '\n') lineStarts[line++] = i + 1
+    }
+  }
+
+  override val lineCount: Int
+    get() = lineStarts.size
+
+  override fun getLineStartOffset(line: Int): Int {
+    return when {
+      line < 0 -> 0
+      line >= lineStarts.size -> text.length
+      else -> lineStarts[line]
+    }
+  }
+
+  override fun getLineEndOffset(line: Int): Int {
+    return when {
+      line < 0 -> 0
+      line >= lineStarts.size - 1 -> text.length
+      else -> lineStarts[line + 1] - 1
+    }
+  }
+}
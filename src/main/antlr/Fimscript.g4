@@ -117,7 +117,7 @@ command:
         | MARK_COMMAND | JUMPS | J_LOWERCASE | JOIN_LINES | HISTORY | GO_TO_CHAR | SYMBOL | FIND | CLASS | F_LOWERCASE
         | FILE | EXIT | E_LOWERCASE | EDIT_FILE | DUMP_LINE | DIGRAPH | DEL_MARKS | D_LOWERCASE | DEL_LINES | DELCMD
         | T_LOWERCASE | COPY | CMD_CLEAR | BUFFER_LIST | BUFFER_CLOSE | B_LOWERCASE | BUFFER | ASCII
-        | ACTIONLIST | ACTION | LOCKVAR | UNLOCKVAR | PACKADD | TABMOVE
+        | ACTIONLIST | ACTION | LOCKVAR | UNLOCKVAR | PACKADD | TABMOVE | FIMSTATS
       )
     WS* ((commandArgumentWithoutBars? inline_comment NEW_LINE) | (commandArgumentWithoutBars? NEW_LINE) | (commandArgumentWithoutBars? BAR)) (NEW_LINE | BAR)*
     #CommandWithComment|
@@ -508,6 +508,7 @@ existingCommands:       RETURN
                     |   CALL
                     |   NORMAL
                     |   TABMOVE
+                    |   FIMSTATS
 ;
 ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 //
@@ -701,6 +702,7 @@ LOCKVAR:                'lockv' | 'lockva' | 'lockvar';
 UNLOCKVAR:              'unlo' | 'unloc' | 'unlock' | 'unlockv' | 'unlockva' | 'unlockvar';
 NORMAL:                 'norm' | 'norma' | 'normal';
 TABMOVE:                'tabm' | 'tabmo' | 'tabmov' | 'tabmove';
+FIMSTATS:               'fimstats';
 
 // Types
 DIGIT:                  [0-9];
@@ -19,11 +19,17 @@
 package com.flop.idea.fim.fimscript.model.commands
 
 import com.intellij.openapi.editor.RangeMarker
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.progress.util.PotemkinProgress
 import com.flop.idea.fim.FimPlugin
 import com.flop.idea.fim.api.ExecutionContext
 import com.flop.idea.fim.api.FimEditor
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.OperatorArguments
+import com.flop.idea.fim.command.SelectionType
+import com.flop.idea.fim.common.TextRange
 import com.flop.idea.fim.ex.ranges.LineRange
 import com.flop.idea.fim.ex.ranges.Ranges
 import com.flop.idea.fim.group.SearchGroup.RE_BOTH
@@ -126,7 +132,6 @@ data class GlobalCommand(val ranges: Ranges, val argument: String, val invert: B
         globalExecuteOne(editor, context, lineStartOffset, cmd.toString())
       }
     } else {
-      // pass 1: set marks for each (not) matching line
       val line1 = range.startLine
       val line2 = range.endLine
       //region search_regcomp implementation
@@ -137,56 +142,171 @@ data class GlobalCommand(val ranges: Ranges, val argument: String, val invert: B
         return false
       }
 
-      var ndone = 0
-      val marks = mutableListOf<RangeMarker>()
-      for (lnum in line1..line2) {
-        if (gotInt) break
+      gotInt = false
+      if (line2 - line1 + 1 >= PROGRESS_LINE_COUNT) {
+        // Large ranges are processed under a progress with a stop button, which interrupts the command
+        val progress = PotemkinProgress(message("progress.title.global.command"), editor.ij.project, null, message("stop"))
+        progress.isIndeterminate = false
+        progress.runInSwingThread { globalLines(editor, context, sp, regmatch, line1, line2, pat, cmd.toString(), progress) }
+      } else {
+        globalLines(editor, context, sp, regmatch, line1, line2, pat, cmd.toString(), null)
+      }
+    }
+    return true
+  }
 
-        // a match on this line?
-        match = sp.fim_regexec_multi(regmatch, editor, lcount, lnum, searchcol)
-        if ((!invert && match > 0) || (invert && match <= 0)) {
-          val lineStartOffset = editor.getLineStartOffset(lnum)
-          marks += editor.ij.document.createRangeMarker(lineStartOffset, lineStartOffset)
-          ndone += 1
-        }
-        // TODO: 25.05.2021 Check break
+  private fun globalLines(
+    editor: FimEditor,
+    context: ExecutionContext,
+    sp: RegExp,
+    regmatch: RegExp.regmmatch_T,
+    line1: Int,
+    line2: Int,
+    pat: CharPointer,
+    cmd: String,
+    progress: ProgressIndicator?,
+  ) {
+    // pass 1: collect each (not) matching line
+    // Every line is tested on its own, so a match spanning several lines doesn't hide the matches starting on the
+    // next ones. SearchHelper.findAll skips those like a search does, so it isn't used here. Its parallel search also
+    // runs on a text snapshot where patterns like \%# never match, while this pass may use the caret position
+    val lcount = editor.lineCount()
+    var ndone = 0
+    val lines = IntArray(line2 - line1 + 1)
+    for (lnum in line1..line2) {
+      if ((lnum - line1) % PROGRESS_STEP == 0) checkInterrupted(progress, (lnum - line1).toDouble() / lines.size / 2)
+      if (gotInt) break
+
+      // a match on this line?
+      val match = sp.fim_regexec_multi(regmatch, editor, lcount, lnum, 0)
+      if ((!invert && match > 0) || (invert && match <= 0)) {
+        lines[ndone++] = lnum
       }
+    }
 
-      // pass 2: execute the command for each line that has been marked
+    // pass 2: execute the command for each line that has been collected
+    if (gotInt) {
+      com.flop.idea.fim.FimPlugin.showMessage(message("e_interr"))
+    } else if (ndone == 0) {
+      if (invert) {
+        com.flop.idea.fim.FimPlugin.showMessage(message("global.command.not.found.v", pat.toString()))
+      } else {
+        com.flop.idea.fim.FimPlugin.showMessage(message("global.command.not.found.g", pat.toString()))
+      }
+    } else if (!globalDelete(editor, cmd, lines, ndone)) {
+      // Lines move while the command is executed, so they are tracked with markers
+      val marks = (0 until ndone).map {
+        val lineStartOffset = editor.getLineStartOffset(lines[it])
+        editor.ij.document.createRangeMarker(lineStartOffset, lineStartOffset)
+      }
+      globalExe(editor, context, marks, cmd, progress)
       if (gotInt) {
         com.flop.idea.fim.FimPlugin.showMessage(message("e_interr"))
-      } else if (ndone == 0) {
-        if (invert) {
-          com.flop.idea.fim.FimPlugin.showMessage(message("global.command.not.found.v", pat.toString()))
-        } else {
-          com.flop.idea.fim.FimPlugin.showMessage(message("global.command.not.found.g", pat.toString()))
-        }
+      }
+    }
+  }
+
+  /**
+   * Fast path for `:g/pat/d`: deletes all collected lines with a single document change instead of executing `:d`
+   * for each of them.
+   *
+   * The unnamed and numbered registers get the same content as after deleting the lines one by one, the caret is
+   * left on the line following the last deleted line.
+   *
+   * @return false if the command is not a plain `:delete` and has to be executed line by line
+   */
+  private fun globalDelete(editor: FimEditor, cmd: String, lines: IntArray, count: Int): Boolean {
+    // Registers, counts and ranges make the result depend on the previous deletions
+    if (!PLAIN_DELETE.matches(cmd.trim())) return false
+
+    val document = editor.ij.document
+    val text = document.immutableCharSequence
+    val first = lines[0]
+    val last = lines[count - 1]
+    // The line after a trailing line break is not a real line, leave it to :delete
+    if (last > 0 && document.getLineStartOffset(last) == text.length) return false
+
+    val register = injector.registerGroup.defaultRegister
+    if (!injector.registerGroup.selectRegister(register)) return false
+    // Only the last nine deletions are left in the numbered registers
+    for (i in maxOf(0, count - NUMBERED_REGISTERS) until count) {
+      val lineEndOffset = minOf(document.getLineEndOffset(lines[i]) + 1, text.length)
+      val lineRange = TextRange(document.getLineStartOffset(lines[i]), lineEndOffset)
+      injector.registerGroup.storeText(editor, lineRange, SelectionType.LINE_WISE, true)
+    }
+
+    var startOffset = document.getLineStartOffset(first)
+    val endOffset = if (last + 1 < document.lineCount) document.getLineStartOffset(last + 1) else text.length
+    val kept = StringBuilder()
+    var next = 0
+    for (line in first..last) {
+      if (lines[next] == line) {
+        next++
       } else {
-        globalExe(editor, context, marks, cmd.toString())
+        kept.append(text, document.getLineStartOffset(line), document.getLineStartOffset(line + 1))
+      }
+    }
+    if (endOffset == text.length && (endOffset == 0 || text[endOffset - 1] != '\n')) {
+      // The last line of the document is deleted, remove the line break before it instead of after it
+      if (kept.isNotEmpty()) {
+        kept.setLength(kept.length - 1)
+      } else if (startOffset > 0) {
+        startOffset--
       }
     }
+
+    injector.application.runWriteAction { document.replaceString(startOffset, endOffset, kept) }
+
+    val caret = editor.primaryCaret()
+    val caretLine = minOf(last - count + 1, editor.lineCount() - 1)
+    injector.motion.moveCaret(editor, caret, injector.motion.moveCaretToLineWithStartOfLineOption(editor, caretLine, caret))
     return true
   }
 
-  private fun globalExe(editor: FimEditor, context: ExecutionContext, marks: List<RangeMarker>, cmd: String) {
+  private fun globalExe(
+    editor: FimEditor,
+    context: ExecutionContext,
+    marks: List<RangeMarker>,
+    cmd: String,
+    progress: ProgressIndicator?,
+  ) {
     globalBusy = true
     try {
-      for (mark in marks) {
+      for ((index, mark) in marks.withIndex()) {
+        checkInterrupted(progress, 0.5 + index.toDouble() / marks.size / 2)
         if (gotInt) break
         if (!globalBusy) break
         val startOffset = mark.startOffset
         mark.dispose()
-        globalExecuteOne(editor, context, startOffset, cmd)
-        // TODO: 26.05.2021 break check
+        if (progress == null) {
+          globalExecuteOne(editor, context, startOffset, cmd)
+        } else {
+          // The command must not be interrupted halfway, the progress is only checked between lines
+          ProgressManager.getInstance().executeNonCancelableSection { globalExecuteOne(editor, context, startOffset, cmd) }
+        }
       }
     } catch (e: Exception) {
       throw e
     } finally {
+      marks.forEach { it.dispose() }
       globalBusy = false
     }
     // TODO: 26.05.2021 Add other staff
   }
 
+  /**
+   * Updates the progress and sets [gotInt] if the user stopped the command
+   */
+  private fun checkInterrupted(progress: ProgressIndicator?, fraction: Double) {
+    if (progress == null) return
+    progress.fraction = fraction
+    try {
+      progress.checkCanceled()
+    } catch (e: ProcessCanceledException) {
+      gotInt = true
+    }
+  }
+
   private fun globalExecuteOne(editor: FimEditor, context: ExecutionContext, lineStartOffset: Int, cmd: String?) {
     // TODO: 26.05.2021 What about folds?
     editor.currentCaret().moveToOffset(lineStartOffset)
@@ -200,7 +320,12 @@ data class GlobalCommand(val ranges: Ranges, val argument: String, val invert: B
   companion object {
     private var globalBusy = false
 
-    // Interrupted. Not used at the moment
+    // Interrupted. Set when the progress of a large :g command is stopped
     var gotInt: Boolean = false
+
+    private const val PROGRESS_LINE_COUNT = 10_000
+    private const val PROGRESS_STEP = 1000
+    private const val NUMBERED_REGISTERS = 9
+    private val PLAIN_DELETE = Regex("d(e(l(e(t(e)?)?)?)?)?")
   }
 }
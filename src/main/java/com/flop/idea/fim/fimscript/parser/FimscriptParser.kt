@@ -18,11 +18,11 @@
 
 package com.flop.idea.fim.fimscript.parser
 
-import com.intellij.openapi.diagnostic.logger
 import com.flop.idea.fim.fimscript.model.Script
 import com.flop.idea.fim.fimscript.model.commands.Command
 import com.flop.idea.fim.fimscript.model.expressions.Expression
 import com.flop.idea.fim.fimscript.parser.errors.IdeafimErrorListener
+import com.flop.idea.fim.fimscript.parser.errors.StatementRecoveryStrategy
 import com.flop.idea.fim.fimscript.parser.generated.FimscriptLexer
 import com.flop.idea.fim.fimscript.parser.generated.FimscriptParser
 import com.flop.idea.fim.fimscript.parser.visitors.CommandVisitor
@@ -34,49 +34,31 @@ import org.antlr.v4.runtime.CommonTokenStream
 import org.antlr.v4.runtime.tree.ParseTree
 
 object FimscriptParser : com.flop.idea.fim.api.FimscriptParser {
-
-  private val logger = logger<FimscriptParser>()
-  val linesWithErrors = mutableListOf<Int>()
-  private const val MAX_NUMBER_OF_TRIES = 5
-  private var tries = 0
-
   override fun parse(script: String): Script {
-    val preprocessedText = uncommentIdeaFimIgnore(getTextWithoutErrors(script))
-    linesWithErrors.clear()
-    val parser = getParser(addNewlineIfMissing(preprocessedText), true)
+    val preprocessedText = addNewlineIfMissing(uncommentIdeaFimIgnore(script.replace("\r\n", "\n")))
+    val errorListener = IdeafimErrorListener()
+    val parser = getParser(preprocessedText, errorListener)
+    // Statements with errors are skipped, so the rest of the script is still parsed in the same pass
+    parser.errorHandler = StatementRecoveryStrategy()
     val AST: ParseTree = parser.script()
-    return if (linesWithErrors.isNotEmpty()) {
-      if (tries > MAX_NUMBER_OF_TRIES) {
-        // I don't think, that it's possible to enter an infinite recursion with any fimrc, but let's have it just in case
-        logger.warn("Reached the maximum number of tries to fix a script. Parsing is stopped.")
-        linesWithErrors.clear()
-        tries = 0
-        return Script(listOf())
-      } else {
-        tries += 1
-        parse(preprocessedText)
-      }
-    } else {
-      tries = 0
-      ScriptVisitor.visit(AST)
-    }
+    return ScriptVisitor.visit(AST)
   }
 
   override fun parseExpression(expression: String): Expression? {
-    val parser = getParser(expression, true)
+    val errorListener = IdeafimErrorListener()
+    val parser = getParser(expression, errorListener)
     val AST: ParseTree = parser.expr()
-    if (linesWithErrors.isNotEmpty()) {
-      linesWithErrors.clear()
+    if (errorListener.linesWithErrors.isNotEmpty()) {
       return null
     }
     return ExpressionVisitor.visit(AST)
   }
 
   override fun parseCommand(command: String): Command? {
-    val parser = getParser(addNewlineIfMissing(command), true)
+    val errorListener = IdeafimErrorListener()
+    val parser = getParser(addNewlineIfMissing(command), errorListener)
     val AST: ParseTree = parser.command()
-    if (linesWithErrors.isNotEmpty()) {
-      linesWithErrors.clear()
+    if (errorListener.linesWithErrors.isNotEmpty()) {
       return null
     }
     return CommandVisitor.visit(AST)
@@ -96,42 +78,25 @@ object FimscriptParser : com.flop.idea.fim.api.FimscriptParser {
   }
 
   fun parseLetCommand(text: String): Command? {
-    val parser = getParser(addNewlineIfMissing(text), true)
+    val errorListener = IdeafimErrorListener()
+    val parser = getParser(addNewlineIfMissing(text), errorListener)
     val AST: ParseTree = parser.letCommands()
-    if (linesWithErrors.isNotEmpty()) {
-      linesWithErrors.clear()
+    if (errorListener.linesWithErrors.isNotEmpty()) {
       return null
     }
     return CommandVisitor.visit(AST)
   }
 
-  private fun getParser(text: String, addListener: Boolean = false): FimscriptParser {
+  private fun getParser(text: String, errorListener: IdeafimErrorListener): FimscriptParser {
     val input: CharStream = CharStreams.fromString(text)
     val lexer = FimscriptLexer(input)
     val tokens = CommonTokenStream(lexer)
     val parser = FimscriptParser(tokens)
     parser.errorListeners.clear()
-    if (addListener) {
-      parser.addErrorListener(IdeafimErrorListener())
-    }
+    parser.addErrorListener(errorListener)
     return parser
   }
 
-  private fun getTextWithoutErrors(text: String): String {
-    linesWithErrors.sortDescending()
-    val lineNumbersToDelete = linesWithErrors
-    val lines = text.split("\n", "\r\n").toMutableList()
-    for (lineNumber in lineNumbersToDelete) {
-      // this may happen if we have an error somewhere at the end and parser can't find any matching token till EOF (EOF's line number is lines.size)
-      if (lines.size <= lineNumber) {
-        logger.warn("Parsing error affects lines till EOF")
-      } else {
-        lines.removeAt(lineNumber - 1)
-      }
-    }
-    return lines.joinToString(separator = "\n")
-  }
-
   private fun uncommentIdeaFimIgnore(configuration: String): String {
     return configuration.replace(Regex("\"( )*ideafim ignore", RegexOption.IGNORE_CASE), "ideafim ignore")
   }
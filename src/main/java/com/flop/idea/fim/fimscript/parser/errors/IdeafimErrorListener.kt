@@ -20,13 +20,14 @@ package com.flop.idea.fim.fimscript.parser.errors
 
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.logger
-import com.flop.idea.fim.fimscript.parser.FimscriptParser
 import org.antlr.v4.runtime.BaseErrorListener
 import org.antlr.v4.runtime.RecognitionException
 import org.antlr.v4.runtime.Recognizer
 
 class IdeafimErrorListener : BaseErrorListener() {
   private val logger = logger<IdeafimErrorListener>()
+  val linesWithErrors = mutableListOf<Int>()
+
   companion object {
     val testLogger = mutableListOf<String>()
   }
@@ -39,7 +40,7 @@ class IdeafimErrorListener : BaseErrorListener() {
     msg: String?,
     e: RecognitionException?
   ) {
-    FimscriptParser.linesWithErrors.add(line)
+    linesWithErrors.add(line)
     val message = "line $line:$charPositionInLine $msg"
     if (ApplicationManager.getApplication().isUnitTestMode) {
       testLogger.add(message)
@@ -0,0 +1,119 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.fimscript.parser.errors
+
+import com.flop.idea.fim.fimscript.parser.generated.FimscriptParser
+import org.antlr.v4.runtime.DefaultErrorStrategy
+import org.antlr.v4.runtime.InputMismatchException
+import org.antlr.v4.runtime.Parser
+import org.antlr.v4.runtime.ParserRuleContext
+import org.antlr.v4.runtime.RecognitionException
+import org.antlr.v4.runtime.RuleContext
+import org.antlr.v4.runtime.Token
+import org.antlr.v4.runtime.atn.ATNState
+import org.antlr.v4.runtime.misc.IntervalSet
+
+/**
+ * Recovers from syntax errors of a script at statement boundaries, so a script with errors is parsed in a single pass.
+ *
+ * An error inside a statement is propagated up to the closest `blockMember` and the rest of its line is skipped, which
+ * leaves the statement with an [ParserRuleContext.exception] set, so the visitors ignore it. Lines that can't start a
+ * statement are skipped by [sync] where a block expects the next statement. The result is the same as deleting the
+ * lines with errors from the script and parsing it again.
+ *
+ * Unlike the default strategy, tokens are never inserted or deleted to repair a statement, because a repaired
+ * statement may do something other than the user intended.
+ */
+class StatementRecoveryStrategy : DefaultErrorStrategy() {
+
+  override fun recover(recognizer: Parser, e: RecognitionException) {
+    val context = recognizer.context
+    if (context is FimscriptParser.BlockMemberContext) {
+      skipLine(recognizer)
+      endErrorCondition(recognizer)
+    } else if (hasStatementParent(context)) {
+      // The exception is already reported, it is caught again by the parent rules up to the statement
+      throw e
+    } else {
+      super.recover(recognizer, e)
+    }
+  }
+
+  override fun recoverInline(recognizer: Parser): Token {
+    throw InputMismatchException(recognizer)
+  }
+
+  override fun sync(recognizer: Parser) {
+    if (inErrorRecoveryMode(recognizer)) return
+
+    val atn = recognizer.interpreter.atn
+    val state = atn.states[recognizer.state]
+    if (isStatementLoop(state)) {
+      while (nextToken(recognizer) != Token.EOF && !recognizer.isExpectedToken(nextToken(recognizer))) {
+        reportUnwantedToken(recognizer)
+        skipLine(recognizer)
+        endErrorCondition(recognizer)
+      }
+    } else {
+      val nextTokens = atn.nextTokens(state)
+      if (!nextTokens.contains(nextToken(recognizer)) && !nextTokens.contains(Token.EPSILON)) {
+        throw InputMismatchException(recognizer)
+      }
+    }
+  }
+
+  /**
+   * Checks if the state is the loop over the statements of a block or of the whole script
+   */
+  private fun isStatementLoop(state: ATNState): Boolean {
+    if (state.stateType != ATNState.STAR_LOOP_ENTRY && state.stateType != ATNState.STAR_LOOP_BACK) return false
+    return statementStart.subtract(state.atn.nextTokens(state)).isNil
+  }
+
+  private fun hasStatementParent(context: ParserRuleContext?): Boolean {
+    var parent: RuleContext? = context?.parent
+    while (parent != null) {
+      if (parent is FimscriptParser.BlockMemberContext) return true
+      parent = parent.parent
+    }
+    return false
+  }
+
+  /**
+   * Consumes the tokens up to the end of the current line, including the line break
+   */
+  private fun skipLine(recognizer: Parser) {
+    beginErrorCondition(recognizer)
+    while (nextToken(recognizer) != Token.EOF && nextToken(recognizer) != FimscriptParser.NEW_LINE) {
+      recognizer.consume()
+    }
+    if (nextToken(recognizer) == FimscriptParser.NEW_LINE) {
+      recognizer.consume()
+    }
+  }
+
+  private fun nextToken(recognizer: Parser): Int = recognizer.inputStream.LA(1)
+
+  companion object {
+    private val statementStart: IntervalSet by lazy {
+      val atn = FimscriptParser._ATN
+      atn.nextTokens(atn.ruleToStartState[FimscriptParser.RULE_blockMember])
+    }
+  }
+}
@@ -49,6 +49,7 @@ import com.flop.idea.fim.fimscript.model.commands.FileCommand
 import com.flop.idea.fim.fimscript.model.commands.FindClassCommand
 import com.flop.idea.fim.fimscript.model.commands.FindFileCommand
 import com.flop.idea.fim.fimscript.model.commands.FindSymbolCommand
+import com.flop.idea.fim.fimscript.model.commands.FimStatsCommand
 import com.flop.idea.fim.fimscript.model.commands.GlobalCommand
 import com.flop.idea.fim.fimscript.model.commands.GoToLineCommand
 import com.flop.idea.fim.fimscript.model.commands.GotoCharacterCommand
@@ -326,6 +327,7 @@ object CommandVisitor : FimscriptBaseVisitor<Command>() {
     "delfunction" to DelfunctionCommand::class,
     "action" to ActionCommand::class,
     "actionlist" to ActionListCommand::class,
+    "fimstats" to FimStatsCommand::class,
     "as" to AsciiCommand::class,
     "asc" to AsciiCommand::class,
     "asci" to AsciiCommand::class,
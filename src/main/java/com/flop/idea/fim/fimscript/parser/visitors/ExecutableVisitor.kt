@@ -47,6 +47,8 @@ object ExecutableVisitor : FimscriptBaseVisitor<Executable>() {
 
   override fun visitBlockMember(ctx: FimscriptParser.BlockMemberContext): Executable? {
     return when {
+      // the statement has syntax errors and was skipped by the parser
+      ctx.exception != null -> null
       ctx.command() != null -> CommandVisitor.visit(ctx.command())
       ctx.breakStatement() != null -> BreakStatement
       ctx.continueStatement() != null -> ContinueStatement
@@ -40,6 +40,9 @@ object FunctionStorage : FimscriptFunctionService {
   private val extensionPoint = ExtensionPointName.create<FunctionBeanClass>("IdeaFIM.fimLibraryFunction")
   private val builtInFunctions: MutableMap<String, FunctionHandler> = mutableMapOf()
 
+  override var version = 0
+    private set
+
   override fun deleteFunction(name: String, scope: Scope?, fimContext: FimLContext) {
     if (name[0].isLowerCase() && scope != Scope.SCRIPT_VARIABLE) {
       throw ExException("E128: Function name must start with a capital or \"s:\": $name")
@@ -51,6 +54,7 @@ object FunctionStorage : FimscriptFunctionService {
           if (globalFunctions.containsKey(name)) {
             globalFunctions[name]!!.isDeleted = true
             globalFunctions.remove(name)
+            version++
             return
           } else {
             throw ExException("E130: Unknown function: ${scope.c}:$name")
@@ -74,6 +78,7 @@ object FunctionStorage : FimscriptFunctionService {
     if (globalFunctions.containsKey(name)) {
       globalFunctions[name]!!.isDeleted = true
       globalFunctions.remove(name)
+      version++
       return
     }
 
@@ -93,6 +98,7 @@ object FunctionStorage : FimscriptFunctionService {
           throw ExException("E122: Function ${declaration.name} already exists, add ! to replace it")
         } else {
           globalFunctions[declaration.name] = declaration
+          version++
         }
       }
       Scope.SCRIPT_VARIABLE -> {
@@ -153,6 +159,7 @@ object FunctionStorage : FimscriptFunctionService {
   private fun storeScriptFunction(functionDeclaration: FunctionDeclaration) {
     val script = functionDeclaration.getScript() ?: throw ExException("E81: Using <SID> not in a script context")
     script.scriptFunctions[functionDeclaration.name] = functionDeclaration
+    version++
   }
 
   private fun getScriptFunction(name: String, fimContext: FimLContext): FunctionDeclaration? {
@@ -166,6 +173,7 @@ object FunctionStorage : FimscriptFunctionService {
       script.scriptFunctions[name]!!.isDeleted = true
     }
     script.scriptFunctions.remove(name)
+    version++
   }
 
   private fun getDefaultFunctionScope(): Scope {
@@ -180,6 +188,7 @@ object FunctionStorage : FimscriptFunctionService {
     handlerHolder as FunctionBeanClass
     if (handlerHolder.name != null) {
       builtInFunctions[handlerHolder.name!!] = handlerHolder.instance
+      version++
     } else {
       logger.error("Received function handler with null name")
     }
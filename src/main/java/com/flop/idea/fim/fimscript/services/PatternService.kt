@@ -19,7 +19,9 @@
 package com.flop.idea.fim.fimscript.services
 
 import com.flop.idea.fim.api.FimRegexpService
-import com.flop.idea.fim.regexp.RegExp
+import com.flop.idea.fim.common.TextRange
+import com.flop.idea.fim.regexp.RegExpCache
+import com.flop.idea.fim.regexp.RegExpPool
 import com.flop.idea.fim.regexp.RegExp.regmmatch_T
 
 object PatternService : FimRegexpService {
@@ -29,20 +31,29 @@ object PatternService : FimRegexpService {
       return false
     }
 
-    val regExp = RegExp()
     val regMatch = regmmatch_T()
     regMatch.rmm_ic = ignoreCase
 
-    regMatch.regprog = regExp.fim_regcomp(pattern, 1)
-    regMatch.regprog
+    regMatch.regprog = RegExpCache.compile(pattern)
     if (regMatch.regprog == null) {
       return false
     }
 
-    // todo optimize me senpai :(
-    for (i in 0..text.length) {
-      if (regExp.fim_string_contains_regexp(regMatch, text.substring(i))) return true
+    return RegExpPool.use { it.fim_string_search(regMatch, text) }
+  }
+
+  override fun findMatch(pattern: String, text: CharSequence, ignoreCase: Boolean): TextRange? {
+    val regMatch = regmmatch_T()
+    regMatch.rmm_ic = ignoreCase
+
+    regMatch.regprog = RegExpCache.compile(pattern)
+    if (regMatch.regprog == null) {
+      return null
+    }
+
+    if (!RegExpPool.use { it.fim_string_search(regMatch, text) }) {
+      return null
     }
-    return false
+    return TextRange(regMatch.startpos[0]!!.col, regMatch.endpos[0]!!.col)
   }
 }
@@ -35,9 +35,7 @@ import com.flop.idea.fim.newapi.IjFimEditor;
 import com.flop.idea.fim.options.OptionConstants;
 import com.flop.idea.fim.options.OptionScope;
 import com.flop.idea.fim.fimscript.model.datatypes.FimString;
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import com.intellij.codeInsight.actions.AsyncActionExecutionService;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.DataContext;
@@ -52,12 +50,10 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.event.EditorMouseEvent;
 import com.intellij.openapi.editor.event.EditorMouseListener;
-import com.intellij.openapi.editor.impl.TextRangeInterval;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.ui.popup.Balloon;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.intellij.psi.util.PsiUtilBase;
@@ -744,14 +740,14 @@ public class ChangeGroup extends FimChangeGroupBase {
 
 
   /**
-   * Sort range of text with a given comparator
+   * Sort range of text with a given sorter
    *
-   * @param editor         The editor to replace text in
-   * @param range          The range to sort
-   * @param lineComparator The comparator to use to sort
+   * @param editor     The editor to replace text in
+   * @param range      The range to sort
+   * @param lineSorter The sorter to use
    * @return true if able to sort the text, false if not
    */
-  public boolean sortRange(@NotNull FimEditor editor, @NotNull LineRange range, @NotNull Comparator<String> lineComparator) {
+  public boolean sortRange(@NotNull FimEditor editor, @NotNull LineRange range, @NotNull LineSorter lineSorter) {
     final int startLine = range.startLine;
     final int endLine = range.endLine;
     final int count = endLine - startLine + 1;
@@ -759,32 +755,13 @@ public class ChangeGroup extends FimChangeGroupBase {
       return false;
     }
 
-    final int startOffset = ((IjFimEditor) editor).getEditor().getDocument().getLineStartOffset(startLine);
-    final int endOffset = ((IjFimEditor) editor).getEditor().getDocument().getLineEndOffset(endLine);
+    final Document document = ((IjFimEditor) editor).getEditor().getDocument();
+    final int startOffset = document.getLineStartOffset(startLine);
+    final int endOffset = document.getLineEndOffset(endLine);
 
-    return sortTextRange(editor, startOffset, endOffset, lineComparator);
-  }
-
-  /**
-   * Sorts a text range with a comparator. Returns true if a replace was performed, false otherwise.
-   *
-   * @param editor         The editor to replace text in
-   * @param start          The starting position for the sort
-   * @param end            The ending position for the sort
-   * @param lineComparator The comparator to use to sort
-   * @return true if able to sort the text, false if not
-   */
-  private boolean sortTextRange(@NotNull FimEditor editor,
-                                int start,
-                                int end,
-                                @NotNull Comparator<String> lineComparator) {
-    final String selectedText = ((IjFimEditor) editor).getEditor().getDocument().getText(new TextRangeInterval(start, end));
-    final List<String> lines = Lists.newArrayList(Splitter.on("\n").split(selectedText));
-    if (lines.size() < 1) {
-      return false;
-    }
-    lines.sort(lineComparator);
-    replaceText(editor, start, end, StringUtil.join(lines, "\n"));
+    // The whole range is replaced at once, so the change is a single document event and a single undo step
+    final String sortedText = lineSorter.sort(document.getImmutableCharSequence().subSequence(startOffset, endOffset));
+    replaceText(editor, startOffset, endOffset, sortedText);
     return true;
   }
 
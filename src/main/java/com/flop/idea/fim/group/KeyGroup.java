@@ -43,6 +43,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.keymap.Keymap;
 import com.intellij.openapi.keymap.KeymapManager;
+import com.intellij.openapi.keymap.KeymapManagerListener;
 import com.intellij.openapi.keymap.ex.KeymapManagerEx;
 import com.flop.idea.fim.EventFacade;
 import com.flop.idea.fim.FimPlugin;
@@ -64,6 +65,7 @@ import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.awt.*;
@@ -85,6 +87,12 @@ public class KeyGroup extends FimKeyGroupBase implements PersistentStateComponen
 
   private static final Logger logger = Logger.getInstance(KeyGroup.class);
 
+  /**
+   * Whether a key stroke has conflicts in the active keymap, for all the required shortcut keys. Built on the first
+   * request and dropped on any keymap change, because the keymap lookup is too slow for every key press.
+   */
+  private @Nullable Map<KeyStroke, Boolean> keymapConflicts = null;
+
   public void registerRequiredShortcutKeys(@NotNull FimEditor editor) {
     EventFacade.getInstance()
       .registerCustomShortcutSet(FimShortcutKeyAction.getInstance(), toShortcutSet(getRequiredShortcutKeys()),
@@ -197,6 +205,36 @@ public class KeyGroup extends FimKeyGroupBase implements PersistentStateComponen
     return actions.stream().map(IjNativeAction::new).collect(toList());
   }
 
+  /**
+   * Same as {@code !getKeymapConflicts(keyStroke).isEmpty()}, but uses the cached conflict table
+   */
+  public boolean hasKeymapConflicts(@NotNull KeyStroke keyStroke) {
+    Map<KeyStroke, Boolean> conflicts = keymapConflicts;
+    if (conflicts == null) {
+      conflicts = new HashMap<>();
+      for (RequiredShortcut requiredShortcut : getRequiredShortcutKeys()) {
+        final KeyStroke requiredKeyStroke = requiredShortcut.getKeyStroke();
+        conflicts.put(requiredKeyStroke, !getKeymapConflicts(requiredKeyStroke).isEmpty());
+      }
+      keymapConflicts = conflicts;
+    }
+    Boolean hasConflicts = conflicts.get(keyStroke);
+    if (hasConflicts == null) {
+      hasConflicts = !getKeymapConflicts(keyStroke).isEmpty();
+      conflicts.put(keyStroke, hasConflicts);
+    }
+    return hasConflicts;
+  }
+
+  public void resetKeymapConflicts() {
+    keymapConflicts = null;
+  }
+
+  @TestOnly
+  public boolean hasCachedKeymapConflicts() {
+    return keymapConflicts != null;
+  }
+
   public @NotNull Map<KeyStroke, ShortcutOwnerInfo> getShortcutConflicts() {
     final Set<RequiredShortcut> requiredShortcutKeys = this.getRequiredShortcutKeys();
     final Map<KeyStroke, ShortcutOwnerInfo> savedConflicts = getSavedShortcutConflicts();
@@ -404,4 +442,19 @@ public class KeyGroup extends FimKeyGroupBase implements PersistentStateComponen
   public boolean showKeyMappings(@NotNull Set<? extends MappingMode> modes, @NotNull FimEditor editor) {
     return showKeyMappings(modes, ((IjFimEditor) editor).getEditor());
   }
+
+  /**
+   * Drops the cached keymap conflicts when the active keymap or its shortcuts change
+   */
+  public static class KeymapConflictsListener implements KeymapManagerListener {
+    @Override
+    public void activeKeymapChanged(@Nullable Keymap keymap) {
+      FimPlugin.getKey().resetKeymapConflicts();
+    }
+
+    @Override
+    public void shortcutChanged(@NotNull Keymap keymap, @NonNls @NotNull String actionId) {
+      FimPlugin.getKey().resetKeymapConflicts();
+    }
+  }
 }
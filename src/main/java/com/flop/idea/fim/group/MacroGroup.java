@@ -101,6 +101,9 @@ public class MacroGroup extends FimMacroBase {
                              MessageHelper.message("stop"));
       potemkinProgress.setIndeterminate(false);
       potemkinProgress.setFraction(0);
+      final boolean traceTime = FimPlugin.getOptionService().isSet(OptionScope.GLOBAL.INSTANCE, OptionConstants.ideatracetimeName, OptionConstants.ideatracetimeName);
+      final long start = System.nanoTime();
+      final int[] keyCount = {0};
       potemkinProgress.runInSwingThread(() -> {
         // Handle one keystroke then queue up the next key
         for (int i = 0; i < total; ++i) {
@@ -116,11 +119,24 @@ public class MacroGroup extends FimMacroBase {
             ProgressManager.getInstance().executeNonCancelableSection(() -> {
               KeyHandler.getInstance().handleKey(editor, key, context);
             });
+            keyCount[0]++;
           }
           keyStack.resetFirst();
         }
         keyStack.removeFirst();
       });
+      if (traceTime) {
+        final long duration = Math.max(System.nanoTime() - start, 1);
+        logger.info("Macro playback: " + keyCount[0] + " keys in " + duration / 1_000_000 + " ms (" +
+                    keyCount[0] * 1_000_000_000L / duration + " keys/s)");
+      }
     }
   }
+
+  @Override
+  protected void onPlaybackFinished(@NotNull FimEditor editor) {
+    super.onPlaybackFinished(editor);
+    // Search highlights are not updated while a macro is executing
+    FimPlugin.getSearch().updateDeferredSearchHighlights();
+  }
 }
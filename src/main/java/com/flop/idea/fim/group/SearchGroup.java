@@ -36,6 +36,7 @@ import com.flop.idea.fim.options.OptionScope;
 import com.flop.idea.fim.regexp.CharPointer;
 import com.flop.idea.fim.regexp.CharacterClasses;
 import com.flop.idea.fim.regexp.RegExp;
+import com.flop.idea.fim.regexp.RegExpCache;
 import com.flop.idea.fim.register.RegisterConstants;
 import com.flop.idea.fim.fimscript.model.FimLContext;
 import com.flop.idea.fim.fimscript.model.datatypes.FimDataType;
@@ -53,14 +54,13 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Caret;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
-import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.DocumentUtil;
 import com.flop.idea.fim.FimPlugin;
 import com.flop.idea.fim.api.*;
 import com.flop.idea.fim.common.CharacterPosition;
@@ -152,6 +152,17 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
     lastIgnoreSmartCase = false;
     lastDir = Direction.FORWARDS;
     resetShowSearchHighlight();
+    substituteMatchByMatch = false;
+  }
+
+  /**
+   * Make `:substitute` replace every match with its own document change, as it does with confirmation or expressions
+   *
+   * <p>Used to compare the batched replacement against the match-by-match one.</p>
+   */
+  @TestOnly
+  public void setSubstituteMatchByMatch(boolean matchByMatch) {
+    substituteMatchByMatch = matchByMatch;
   }
 
   /**
@@ -787,7 +798,13 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
     boolean firstMatch = true;
     boolean got_quit = false;
     int lcount = EditorHelper.getLineCount(((IjFimEditor) editor).getEditor());
+    // The expression of `\=` is parsed on the first match and then reused for all other matches
+    boolean isExpression = sub.charAt(0) == '\\' && sub.charAt(1) == '=';
     Expression expression = null;
+    // Without confirmation and expressions the replacements don't depend on each other, so we can collect them while
+    // matching against the unmodified document and apply them all at once
+    boolean batched = !do_ask && !isExpression && !substituteMatchByMatch;
+    List<SubstituteReplacement> replacements = new ArrayList<>();
     for (int lnum = line1; lnum <= line2 && !got_quit; ) {
       CharacterPosition newpos = null;
       int nmatch = sp.fim_regexec_multi(regmatch, editor, lcount, lnum, searchcol);
@@ -798,16 +815,24 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
         }
 
 
-        String match = sp.fim_regsub_multi(regmatch, lnum, sub, 1, false);
-        if (sub.charAt(0) == '\\' && sub.charAt(1) == '=') {
-          String exprString = sub.toString().substring(2);
-          expression = FimscriptParser.INSTANCE.parseExpression(exprString);
+        String match;
+        if (isExpression) {
+          // The replacement is the result of the expression, there is nothing to substitute in the `\=` string
+          match = "";
           if (expression == null) {
-            exceptions.add(new ExException("E15: Invalid expression: " + exprString));
-            expression = new SimpleExpression(new FimString(""));
+            String exprString = sub.toString().substring(2);
+            expression = FimscriptParser.INSTANCE.parseExpression(exprString);
+            if (expression == null) {
+              exceptions.add(new ExException("E15: Invalid expression: " + exprString));
+              expression = new SimpleExpression(new FimString(""));
+            }
+          }
+        }
+        else {
+          match = sp.fim_regsub_multi(regmatch, lnum, sub, 1, false);
+          if (match == null) {
+            return false;
           }
-        } else if (match == null) {
-          return false;
         }
 
         int line = lnum + regmatch.startpos[0].lnum;
@@ -843,7 +868,10 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
                 break;
             }
           }
-          if (doReplace) {
+          if (doReplace && batched) {
+            replacements.add(new SubstituteReplacement(startoff, endoff, match));
+          }
+          else if (doReplace) {
             SubmatchFunctionHandler.INSTANCE.setLatestMatch(((IjFimEditor) editor).getEditor().getDocument().getText(new com.intellij.openapi.util.TextRange(startoff, endoff)));
             injector.getMotion().moveCaret(editor, caret, startoff);
             if (expression != null) {
@@ -892,6 +920,10 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
       }
     }
 
+    if (!replacements.isEmpty()) {
+      lastMatch = applySubstituteReplacements(((IjFimEditor) editor).getEditor().getDocument(), replacements);
+    }
+
     if (!got_quit) {
       if (lastMatch != -1) {
         injector.getMotion().moveCaret(editor, caret,
@@ -915,6 +947,44 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
     return true;
   }
 
+  /**
+   * Apply the replacements collected by a non-interactive substitute as a single document modification
+   *
+   * @param document      The document to modify
+   * @param replacements  Non-overlapping replacements, in ascending offset order
+   * @return              The start offset of the last replacement in the modified document
+   */
+  private static int applySubstituteReplacements(@NotNull Document document,
+                                                 @NotNull List<SubstituteReplacement> replacements) {
+    ApplicationManager.getApplication().runWriteAction(
+      () -> DocumentUtil.executeInBulk(document, replacements.size() > BULK_SUBSTITUTE_THRESHOLD, () -> {
+        // Replace bottom up, so the offsets of the remaining replacements stay valid
+        for (int i = replacements.size() - 1; i >= 0; i--) {
+          final SubstituteReplacement replacement = replacements.get(i);
+          document.replaceString(replacement.startOffset, replacement.endOffset, replacement.text);
+        }
+      }));
+
+    int shift = 0;
+    for (int i = 0; i < replacements.size() - 1; i++) {
+      final SubstituteReplacement replacement = replacements.get(i);
+      shift += replacement.text.length() - (replacement.endOffset - replacement.startOffset);
+    }
+    return replacements.get(replacements.size() - 1).startOffset + shift;
+  }
+
+  private static final class SubstituteReplacement {
+    private final int startOffset;
+    private final int endOffset;
+    private final @NotNull String text;
+
+    private SubstituteReplacement(int startOffset, int endOffset, @NotNull String text) {
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+      this.text = text;
+    }
+  }
+
   @Override
   public void setLastSearchPattern(@Nullable String lastSearchPattern) {
     this.lastSearch = lastSearchPattern;
@@ -984,7 +1054,7 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
     RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
     regmatch.rmm_ic = shouldIgnoreCase(pattern, false);
     sp = new RegExp();
-    regmatch.regprog = sp.fim_regcomp(pattern, 1);
+    regmatch.regprog = RegExpCache.compile(pattern);
     if (regmatch.regprog == null) {
       return new Pair<>(false, null);
     }
@@ -1121,17 +1191,41 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
   }
 
   private void forceUpdateSearchHighlights() {
+    if (deferSearchHighlights()) return;
     // Sync the search highlights to the current state, potentially hiding or showing highlights. Will always update,
     // even if the pattern hasn't changed.
     SearchHighlightsHelper.updateSearchHighlights(getLastUsedPattern(), lastIgnoreSmartCase, showSearchHighlight, true);
   }
 
   private void updateSearchHighlights() {
+    if (deferSearchHighlights()) return;
     // Sync the search highlights to the current state, potentially hiding or showing highlights. Will only update if
     // the pattern has changed.
     SearchHighlightsHelper.updateSearchHighlights(getLastUsedPattern(), lastIgnoreSmartCase, showSearchHighlight, false);
   }
 
+  /**
+   * Skips the highlight update while a macro is executing. All the highlights are updated once the playback is
+   * finished, see {@link #updateDeferredSearchHighlights()}
+   */
+  private boolean deferSearchHighlights() {
+    if (FimPlugin.getMacro().isExecutingMacro()) {
+      searchHighlightsOutdated = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Updates the search highlights that were left outdated during a macro playback
+   */
+  public void updateDeferredSearchHighlights() {
+    if (searchHighlightsOutdated) {
+      searchHighlightsOutdated = false;
+      forceUpdateSearchHighlights();
+    }
+  }
+
   /**
    * Reset the search highlights to the last used pattern after highlighting incsearch results.
    */
@@ -1182,42 +1276,75 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
 
     @Override
     public void documentChanged(@NotNull DocumentEvent event) {
-      for (Project project : ProjectManager.getInstance().getOpenProjects()) {
-        final Document document = event.getDocument();
+      final Document document = event.getDocument();
+      final SearchMatchIndex index = UserDataManager.getFimSearchMatchIndex(document);
 
-        for (Editor editor : localEditors(document, project)) {
-          Collection<RangeHighlighter> hls = UserDataManager.getFimLastHighlighters(editor);
-          if (hls == null) {
-            continue;
-          }
+      final List<Editor> editors = new ArrayList<>();
+      for (Editor editor : localEditors(document)) {
+        if (UserDataManager.getFimLastHighlighters(editor) != null) {
+          editors.add(editor);
+        }
+      }
+      if (editors.isEmpty()) {
+        // Nothing is highlighted, so there is no reason to keep the index up to date
+        if (index != null) {
+          UserDataManager.setFimSearchMatchIndex(document, null);
+        }
+        return;
+      }
 
-          if (logger.isDebugEnabled()) {
-            logger.debug("hls=" + hls);
-            logger.debug("event=" + event);
-          }
+      final int changedLine = document.getLineNumber(event.getOffset());
+      final int endLine = document.getLineNumber(event.getOffset() + event.getNewLength());
+
+      // Only the changed lines are searched again, and only once for all editors of the document. The lines of a
+      // match spanning several lines that reaches the change are searched again too
+      final boolean deferred = FimPlugin.getSearch().deferSearchHighlights();
+      int startLine = changedLine;
+      List<TextRange> results = null;
+      if (index != null) {
+        startLine = index.linesChanged(document, event.getOffset(), changedLine,
+                                       StringUtil.countNewLines(event.getOldFragment()) + 1, endLine - changedLine + 1);
+        if (!deferred) {
+          results = index.matches(editors.get(0), startLine, endLine);
+        }
+      }
 
-          // We can only re-highlight whole lines, so clear any highlights in the affected lines
-          final LogicalPosition startPosition = editor.offsetToLogicalPosition(event.getOffset());
-          final LogicalPosition endPosition = editor.offsetToLogicalPosition(event.getOffset() + event.getNewLength());
-          final int startLineOffset = document.getLineStartOffset(startPosition.line);
-          final int endLineOffset = document.getLineEndOffset(endPosition.line);
-
-          final Iterator<RangeHighlighter> iter = hls.iterator();
-          while (iter.hasNext()) {
-            final RangeHighlighter highlighter = iter.next();
-            if (!highlighter.isValid() || (highlighter.getStartOffset() >= startLineOffset && highlighter.getEndOffset() <= endLineOffset)) {
-              iter.remove();
-              editor.getMarkupModel().removeHighlighter(highlighter);
-            }
-          }
+      // We can only re-highlight whole lines, so clear any highlights in the affected lines
+      final int startLineOffset = document.getLineStartOffset(startLine);
+      final int endLineOffset = document.getLineEndOffset(endLine);
 
-          FimPlugin.getSearch().highlightSearchLines(editor, startPosition.line, endPosition.line);
+      for (Editor editor : editors) {
+        SearchHighlighters hls = UserDataManager.getFimLastHighlighters(editor);
+        if (hls == null) {
+          continue;
+        }
 
-          if (logger.isDebugEnabled()) {
-            hls = UserDataManager.getFimLastHighlighters(editor);
-            logger.debug("sl=" + startPosition.line + ", el=" + endPosition.line);
-            logger.debug("hls=" + hls);
-          }
+        if (logger.isDebugEnabled()) {
+          logger.debug("hls=" + hls);
+          logger.debug("event=" + event);
+        }
+
+        // Only deleted text invalidates highlighters, and their stale offsets are within the deleted text
+        if (event.getOldLength() > 0) {
+          hls.removeInvalid(editor.getMarkupModel(), event.getOffset(),
+                            event.getOffset() + Math.max(event.getOldLength(), event.getNewLength()));
+        }
+        hls.removeInRange(editor.getMarkupModel(), startLineOffset, endLineOffset);
+
+        if (deferred) {
+          continue;
+        }
+        if (results != null) {
+          SearchHighlightsHelper.highlightSearchResults(editor, index.getPattern(), results, -1);
+        }
+        else {
+          FimPlugin.getSearch().highlightSearchLines(editor, startLine, endLine);
+        }
+
+        if (logger.isDebugEnabled()) {
+          hls = UserDataManager.getFimLastHighlighters(editor);
+          logger.debug("sl=" + startLine + ", el=" + endLine);
+          logger.debug("hls=" + hls);
         }
       }
     }
@@ -1469,6 +1596,7 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
   private boolean lastIgnoreSmartCase;
   private @NotNull Direction lastDir = Direction.FORWARDS;
   private boolean showSearchHighlight = FimPlugin.getOptionService().isSet(OptionScope.GLOBAL.INSTANCE, OptionConstants.hlsearchName, OptionConstants.hlsearchName);
+  private boolean searchHighlightsOutdated = false; // Highlights were not updated during a macro playback
 
   private boolean do_all = false; /* do multiple substitutions per line */
   private boolean do_ask = false; /* ask for confirmation */
@@ -1476,6 +1604,9 @@ public class SearchGroup extends FimSearchGroupBase implements PersistentStateCo
   //private boolean do_print = false; /* print last line with subs. */
   private char do_ic = 0; /* ignore case flag */
 
+  private static final int BULK_SUBSTITUTE_THRESHOLD = 100;
+  private boolean substituteMatchByMatch = false;
+
   // Matching the values defined in Fim. Do not change these values, they are used as indexes
   public static final int RE_SEARCH = 0; // Save/use search pattern
   public static final int RE_SUBST = 1;  // Save/use substitute pattern
@@ -0,0 +1,50 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.helper
+
+import com.intellij.openapi.editor.Document
+import com.flop.idea.fim.api.FimLines
+
+/**
+ * Lines of a document. The document keeps the line start offsets, so nothing is computed or copied here.
+ * Follows the document, so it must be used under the read lock.
+ */
+class DocumentLines(private val document: Document) : FimLines {
+  override val text: CharSequence
+    get() = document.charsSequence
+
+  override val lineCount: Int
+    get() = document.lineCount
+
+  override fun getLineStartOffset(line: Int): Int {
+    return when {
+      line < 0 -> 0
+      line >= document.lineCount -> document.textLength
+      else -> document.getLineStartOffset(line)
+    }
+  }
+
+  override fun getLineEndOffset(line: Int): Int {
+    return when {
+      line < 0 -> 0
+      line >= document.lineCount -> document.textLength
+      else -> document.getLineEndOffset(line)
+    }
+  }
+}
@@ -19,9 +19,11 @@
 package com.flop.idea.fim.helper
 
 import com.intellij.openapi.editor.Document
+import com.intellij.openapi.editor.event.DocumentEvent
 import com.intellij.openapi.editor.event.DocumentListener
 import com.intellij.openapi.util.Key
 import com.flop.idea.fim.EventFacade
+import com.flop.idea.fim.diagnostic.KeyHandlerStats
 import com.flop.idea.fim.group.MarkGroup
 import com.flop.idea.fim.group.SearchGroup
 
@@ -34,22 +36,36 @@ object DocumentManager {
     docListeners += com.flop.idea.fim.group.SearchGroup.DocumentSearchListener.INSTANCE
   }
 
+  /**
+   * Passes the events of a document to all [docListeners], so the time spent in them is recorded as the listener
+   * fan-out shown by `:fimstats`
+   */
+  private val fanOutListener = object : DocumentListener {
+    override fun beforeDocumentChange(event: DocumentEvent) {
+      val startNanos = System.nanoTime()
+      docListeners.forEach { it.beforeDocumentChange(event) }
+      KeyHandlerStats.record(KeyHandlerStats.Phase.LISTENERS, startNanos)
+    }
+
+    override fun documentChanged(event: DocumentEvent) {
+      val startNanos = System.nanoTime()
+      docListeners.forEach { it.documentChanged(event) }
+      KeyHandlerStats.record(KeyHandlerStats.Phase.LISTENERS, startNanos)
+    }
+  }
+
   fun addListeners(doc: Document) {
     val marker = doc.getUserData(LISTENER_MARKER)
     if (marker != null) return
 
     doc.putUserData(LISTENER_MARKER, "foo")
-    for (docListener in docListeners) {
-      com.flop.idea.fim.EventFacade.getInstance().addDocumentListener(doc, docListener)
-    }
+    com.flop.idea.fim.EventFacade.getInstance().addDocumentListener(doc, fanOutListener)
   }
 
   fun removeListeners(doc: Document) {
     doc.getUserData(LISTENER_MARKER) ?: return
 
     doc.putUserData(LISTENER_MARKER, null)
-    for (docListener in docListeners) {
-      com.flop.idea.fim.EventFacade.getInstance().removeDocumentListener(doc, docListener)
-    }
+    com.flop.idea.fim.EventFacade.getInstance().removeDocumentListener(doc, fanOutListener)
   }
 }
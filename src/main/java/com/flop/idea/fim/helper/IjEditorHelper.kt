@@ -28,6 +28,7 @@ import com.flop.idea.fim.api.EngineEditorHelper
 import com.flop.idea.fim.api.ExecutionContext
 import com.flop.idea.fim.api.FimCaret
 import com.flop.idea.fim.api.FimEditor
+import com.flop.idea.fim.api.FimLines
 import com.flop.idea.fim.api.FimVisualPosition
 import com.flop.idea.fim.common.TextRange
 import com.flop.idea.fim.newapi.IjFimCaret
@@ -130,6 +131,10 @@ class IjEditorHelper : EngineEditorHelper {
     return com.flop.idea.fim.helper.EditorHelper.getLineBuffer(editor.ij, line)
   }
 
+  override fun getLines(editor: FimEditor): FimLines {
+    return DocumentLines(editor.ij.document)
+  }
+
   override fun getVisualLineAtBottomOfScreen(editor: FimEditor): Int {
     return com.flop.idea.fim.helper.EditorHelper.getVisualLineAtBottomOfScreen(editor.ij)
   }
@@ -26,6 +26,9 @@ import com.flop.idea.fim.options.OptionConstants;
 import com.flop.idea.fim.options.OptionScope;
 import com.flop.idea.fim.regexp.CharPointer;
 import com.flop.idea.fim.regexp.RegExp;
+import com.flop.idea.fim.regexp.RegExpCache;
+import com.flop.idea.fim.regexp.RegExpPool;
+import com.flop.idea.fim.regexp.TextLines;
 import com.flop.idea.fim.fimscript.model.datatypes.FimDataType;
 import com.flop.idea.fim.fimscript.model.datatypes.FimString;
 import com.google.common.collect.Lists;
@@ -36,6 +39,8 @@ import com.intellij.lang.LanguageCommenters;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Caret;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
@@ -60,6 +65,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -101,17 +108,31 @@ public class SearchHelper {
 
     Direction dir = searchOptions.contains(SearchOptions.BACKWARDS) ? Direction.BACKWARDS : Direction.FORWARDS;
 
-    //RE sp;
-    RegExp sp;
     RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
     regmatch.rmm_ic = shouldIgnoreCase(pattern, searchOptions.contains(SearchOptions.IGNORE_SMARTCASE));
-    sp = new RegExp();
-    regmatch.regprog = sp.fim_regcomp(pattern, 1);
+    regmatch.regprog = RegExpCache.compile(pattern);
     if (regmatch.regprog == null) {
       if (logger.isDebugEnabled()) logger.debug("bad pattern: " + pattern);
       return null;
     }
 
+    RegExp sp = RegExpPool.acquire();
+    try {
+      return findPattern(editor, sp, regmatch, pattern, dir, startOffset, count, searchOptions);
+    }
+    finally {
+      RegExpPool.release(sp);
+    }
+  }
+
+  private static @Nullable TextRange findPattern(@NotNull Editor editor,
+                                                 @NotNull RegExp sp,
+                                                 @NotNull RegExp.regmmatch_T regmatch,
+                                                 @NotNull String pattern,
+                                                 @NotNull Direction dir,
+                                                 int startOffset,
+                                                 int count,
+                                                 EnumSet<SearchOptions> searchOptions) {
     /*
     int extra_col = 1;
     int startcol = -1;
@@ -147,6 +168,9 @@ public class SearchHelper {
     int startLine = 0;
     int endLine = lineCount;
 
+    final IjFimEditor fimEditor = new IjFimEditor(editor);
+    final DocumentLines lines = new DocumentLines(editor.getDocument());
+
     do  /* loop for count */ {
       start_pos = new RegExp.lpos_T(pos);       /* remember start pos for detecting no match */
       found = 0;              /* default: not found */
@@ -179,13 +203,13 @@ public class SearchHelper {
           /*
            * Look for a match somewhere in the line.
            */
-          nmatched = sp.fim_regexec_multi(regmatch, new IjFimEditor(editor), lcount, lnum, 0);
+          nmatched = sp.fim_regexec_multi(regmatch, fimEditor, lcount, lnum, 0);
           if (nmatched > 0) {
             /* match may actually be in another line when using \zs */
             matchpos = new RegExp.lpos_T(regmatch.startpos[0]);
             endpos = new RegExp.lpos_T(regmatch.endpos[0]);
 
-            ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum + matchpos.lnum));
+            ptr = lines.getLine(lnum + matchpos.lnum);
 
             /*
              * Forward search in the first line: match should be after
@@ -215,7 +239,7 @@ public class SearchHelper {
                   ++matchcol;
                 }
                 if (ptr.charAt(matchcol) == '\u0000' ||
-                  (nmatched = sp.fim_regexec_multi(regmatch, new IjFimEditor(editor), lcount, lnum, matchcol)) == 0) {
+                  (nmatched = sp.fim_regexec_multi(regmatch, fimEditor, lcount, lnum, matchcol)) == 0) {
                   match_ok = false;
                   break;
                 }
@@ -224,7 +248,7 @@ public class SearchHelper {
 
                 /* Need to get the line pointer again, a
                  * multi-line search may have made it invalid. */
-                ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum));
+                ptr = lines.getLine(lnum);
               }
               if (!match_ok) {
                 continue;
@@ -270,13 +294,13 @@ public class SearchHelper {
                   ++matchcol;
                 }
                 if (ptr.charAt(matchcol) == '\u0000' ||
-                  (nmatched = sp.fim_regexec_multi(regmatch, new IjFimEditor(editor), lcount, lnum + matchpos.lnum, matchcol)) == 0) {
+                  (nmatched = sp.fim_regexec_multi(regmatch, fimEditor, lcount, lnum + matchpos.lnum, matchcol)) == 0) {
                   break;
                 }
 
                 /* Need to get the line pointer again, a
                  * multi-line search may have made it invalid. */
-                ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum + matchpos.lnum));
+                ptr = lines.getLine(lnum + matchpos.lnum);
               }
 
               /*
@@ -383,45 +407,239 @@ public class SearchHelper {
     final int lineCount = EditorHelper.getLineCount(editor);
     final int actualEndLine = endLine == -1 ? lineCount : endLine;
 
+    if (actualEndLine - startLine >= PARALLEL_FIND_ALL_LINE_COUNT) {
+      return findAll(new TextLines(editor.getDocument().getImmutableCharSequence()), lineCount, pattern, startLine,
+                     actualEndLine, ignoreCase, ProgressManager.getInstance().getProgressIndicator());
+    }
+
     final RegExp.regmmatch_T regMatch = new RegExp.regmmatch_T();
-    final RegExp regExp = new RegExp();
-    regMatch.regprog = regExp.fim_regcomp(pattern, 1);
+    regMatch.regprog = RegExpCache.compile(pattern);
     if (regMatch.regprog == null) {
       return results;
     }
 
     regMatch.rmm_ic = ignoreCase;
 
-    int col = 0;
-    for (int line = startLine; line <= actualEndLine; ) {
-      int matchedLines = regExp.fim_regexec_multi(regMatch, new IjFimEditor(editor), lineCount, line, col);
-      if (matchedLines > 0) {
-        final CharacterPosition startPos = new CharacterPosition(line + regMatch.startpos[0].lnum,
-          regMatch.startpos[0].col);
-        final CharacterPosition endPos = new CharacterPosition(line + regMatch.endpos[0].lnum,
-          regMatch.endpos[0].col);
-        int start = startPos.toOffset(editor);
-        int end = endPos.toOffset(editor);
-        results.add(new TextRange(start, end));
-
-        if (start != end) {
-          line += matchedLines - 1;
-          col = endPos.column;
+    final IjFimEditor fimEditor = new IjFimEditor(editor);
+    final DocumentLines lines = new DocumentLines(editor.getDocument());
+    final RegExp regExp = RegExpPool.acquire();
+    try {
+      int col = 0;
+      for (int line = startLine; line <= actualEndLine; ) {
+        int matchedLines = regExp.fim_regexec_multi(regMatch, fimEditor, lineCount, line, col);
+        if (matchedLines > 0) {
+          int start = lines.getLineStartOffset(line + regMatch.startpos[0].lnum) + regMatch.startpos[0].col;
+          int end = lines.getLineStartOffset(line + regMatch.endpos[0].lnum) + regMatch.endpos[0].col;
+          results.add(new TextRange(start, end));
+
+          if (start != end) {
+            line += matchedLines - 1;
+            col = regMatch.endpos[0].col;
+          }
+          else {
+            line += matchedLines;
+            col = 0;
+          }
         }
         else {
-          line += matchedLines;
+          line++;
           col = 0;
         }
       }
-      else {
-        line++;
-        col = 0;
+    }
+    finally {
+      RegExpPool.release(regExp);
+    }
+
+    return results;
+  }
+
+  /**
+   * Find all occurrences of the pattern in a text snapshot, splitting the lines into chunks that are matched in
+   * parallel.
+   *
+   * <p>The results are the same as the ones of a sequential search: a match that continues into the next chunk
+   * hides the overlapping matches of that chunk, and the chunk is searched again from the end of the match until it
+   * finds the same match as the parallel search.</p>
+   *
+   * <p>The snapshot doesn't change, so this can be called from any thread. Patterns that depend on the caret position
+   * never match.</p>
+   *
+   * @param lines      The text to search in
+   * @param lineCount  The line count of the document the text belongs to
+   * @param pattern    The pattern to search for
+   * @param startLine  The start line of the range to search for
+   * @param endLine    The end line of the range to search for
+   * @param ignoreCase Case sensitive or insensitive searching
+   * @param indicator  The indicator to check for cancellation, e.g. when a newer search has started
+   * @return           A list of TextRange objects representing the results
+   */
+  public static @NotNull List<TextRange> findAll(@NotNull TextLines lines,
+                                                 int lineCount,
+                                                 @NotNull String pattern,
+                                                 int startLine,
+                                                 int endLine,
+                                                 boolean ignoreCase,
+                                                 @Nullable ProgressIndicator indicator) {
+    final RegExp.regprog_T program = RegExpCache.compile(pattern);
+    if (program == null) {
+      return new ArrayList<>();
+    }
+
+    final List<ForkJoinTask<FindAllChunk>> tasks = new ArrayList<>();
+    for (int chunkStart = startLine; chunkStart <= endLine; chunkStart += FIND_ALL_CHUNK_LINE_COUNT) {
+      final int chunkEnd = Math.min(chunkStart + FIND_ALL_CHUNK_LINE_COUNT - 1, endLine);
+      final int from = chunkStart;
+      tasks.add(ForkJoinPool.commonPool().submit(() -> {
+        final FindAllChunk chunk = new FindAllChunk(from, chunkEnd);
+        final int[] next =
+          scanLines(lines, lineCount, program, ignoreCase, from, 0, chunkEnd, chunk.results, null, indicator);
+        chunk.nextLine = next[0];
+        chunk.nextColumn = next[1];
+        return chunk;
+      }));
+    }
+
+    final List<TextRange> results = new ArrayList<>();
+    int nextLine = startLine;
+    int nextColumn = 0;
+    try {
+      for (ForkJoinTask<FindAllChunk> task : tasks) {
+        final FindAllChunk chunk = task.join();
+        if (nextLine > chunk.endLine) {
+          // A multiline match covers the whole chunk
+          continue;
+        }
+        if (nextLine < chunk.startLine || nextColumn == 0 && nextLine == chunk.startLine) {
+          results.addAll(chunk.results);
+          nextLine = chunk.nextLine;
+          nextColumn = chunk.nextColumn;
+          continue;
+        }
+
+        // The previous match ends inside this chunk. Search sequentially until we meet the parallel results again
+        final int resultsStart = results.size();
+        final int[] next = scanLines(lines, lineCount, program, ignoreCase, nextLine, nextColumn, chunk.endLine, results,
+                                      chunk.results, indicator);
+        final int synced = next[2];
+        if (synced >= 0) {
+          results.addAll(chunk.results.subList(synced, chunk.results.size()));
+          nextLine = chunk.nextLine;
+          nextColumn = chunk.nextColumn;
+        }
+        else {
+          nextLine = next[0];
+          nextColumn = next[1];
+        }
+        if (logger.isDebugEnabled()) {
+          logger.debug("findAll: rescanned " + (results.size() - resultsStart) + " matches of chunk " + chunk.startLine);
+        }
+      }
+    }
+    finally {
+      for (ForkJoinTask<FindAllChunk> task : tasks) {
+        task.cancel(false);
       }
     }
 
     return results;
   }
 
+  /**
+   * Sequentially searches the lines of the snapshot, the same way as {@link #findAll(Editor, String, int, int, boolean)}.
+   *
+   * @param stopAt if not null, the search stops as soon as it finds a match from this list
+   * @return the line and column the next search would start from, and the index of the match from stopAt list the
+   * search has stopped at, or -1
+   */
+  private static int[] scanLines(@NotNull TextLines lines,
+                                  int lineCount,
+                                  @NotNull RegExp.regprog_T program,
+                                  boolean ignoreCase,
+                                  int line,
+                                  int col,
+                                  int endLine,
+                                  @NotNull List<TextRange> results,
+                                  @Nullable List<TextRange> stopAt,
+                                  @Nullable ProgressIndicator indicator) {
+    final RegExp.regmmatch_T regMatch = new RegExp.regmmatch_T();
+    regMatch.regprog = program;
+    regMatch.rmm_ic = ignoreCase;
+
+    final RegExp regExp = RegExpPool.acquire();
+    try {
+      int checked = 0;
+      while (line <= endLine) {
+        if (indicator != null && ++checked % 256 == 0) {
+          indicator.checkCanceled();
+        }
+        int matchedLines = regExp.fim_regexec_multi(regMatch, lines, lineCount, line, col);
+        if (matchedLines > 0) {
+          int start = lines.getLineStartOffset(line + regMatch.startpos[0].lnum) + regMatch.startpos[0].col;
+          int end = lines.getLineStartOffset(line + regMatch.endpos[0].lnum) + regMatch.endpos[0].col;
+          final TextRange range = new TextRange(start, end);
+
+          if (start != end) {
+            line += matchedLines - 1;
+            col = regMatch.endpos[0].col;
+          }
+          else {
+            line += matchedLines;
+            col = 0;
+          }
+
+          if (stopAt != null) {
+            final int index = indexOfRange(stopAt, range);
+            if (index >= 0) {
+              return new int[]{line, col, index};
+            }
+          }
+          results.add(range);
+        }
+        else {
+          line++;
+          col = 0;
+        }
+      }
+    }
+    finally {
+      RegExpPool.release(regExp);
+    }
+    return new int[]{line, col, -1};
+  }
+
+  private static int indexOfRange(@NotNull List<TextRange> ranges, @NotNull TextRange range) {
+    int low = 0;
+    int high = ranges.size() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final TextRange current = ranges.get(mid);
+      if (current.getStartOffset() < range.getStartOffset()) {
+        low = mid + 1;
+      }
+      else if (current.getStartOffset() > range.getStartOffset()) {
+        high = mid - 1;
+      }
+      else {
+        return current.getEndOffset() == range.getEndOffset() ? mid : -1;
+      }
+    }
+    return -1;
+  }
+
+  private static final class FindAllChunk {
+    private final int startLine;
+    private final int endLine;
+    private final List<TextRange> results = new ArrayList<>();
+    private int nextLine;
+    private int nextColumn;
+
+    private FindAllChunk(int startLine, int endLine) {
+      this.startLine = startLine;
+      this.endLine = endLine;
+    }
+  }
+
   public static boolean anyNonWhitespace(@NotNull Editor editor, int offset, int dir) {
     int start;
     int end;
@@ -2563,4 +2781,11 @@ public class SearchHelper {
   private static final @NotNull String blockChars = "{}()[]<>";
 
   private static final Logger logger = Logger.getInstance(SearchHelper.class.getName());
+
+  /**
+   * Searches of at least this many lines are split into chunks of FIND_ALL_CHUNK_LINE_COUNT lines matched in parallel.
+   * The background hlsearch pass of {@link SearchMatchIndex} uses the same limit for the lines it hasn't searched yet
+   */
+  static final int PARALLEL_FIND_ALL_LINE_COUNT = 20000;
+  private static final int FIND_ALL_CHUNK_LINE_COUNT = 2000;
 }
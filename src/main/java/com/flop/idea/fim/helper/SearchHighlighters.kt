@@ -0,0 +1,129 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.helper
+
+import com.intellij.openapi.editor.markup.MarkupModel
+import com.intellij.openapi.editor.markup.RangeHighlighter
+
+/**
+ * Search highlighters of an editor, sorted by start offset.
+ *
+ * The document moves the highlighters on every change, but a change never reorders them, so the list stays sorted and
+ * the highlighters of a changed range can be found with a binary search instead of walking all of them.
+ */
+class SearchHighlighters : Iterable<RangeHighlighter> {
+  private val highlighters = ArrayList<RangeHighlighter>()
+
+  val size: Int
+    get() = highlighters.size
+
+  override fun iterator(): Iterator<RangeHighlighter> = highlighters.iterator()
+
+  /**
+   * Adds highlighters sorted by start offset, e.g. the highlighters of the results of a single search
+   */
+  fun addAll(sorted: List<RangeHighlighter>) {
+    if (sorted.isEmpty()) return
+    val index = upperBound(sorted.first().startOffset)
+    if (index == upperBound(sorted.last().startOffset)) {
+      // No existing highlighter between the new ones, which is the case when re-highlighting changed lines
+      highlighters.addAll(index, sorted)
+    } else {
+      highlighters.addAll(sorted)
+      highlighters.sortBy { it.startOffset }
+    }
+  }
+
+  /**
+   * Removes the highlighters lying within the given offsets, and any invalid highlighter starting there. Invalid
+   * highlighters of a deletion have to be removed with [removeInvalid] first
+   */
+  fun removeInRange(markupModel: MarkupModel, startOffset: Int, endOffset: Int) {
+    val from = lowerBound(startOffset)
+    val to = upperBound(endOffset)
+    var kept = from
+    for (i in from until to) {
+      val highlighter = highlighters[i]
+      if (!highlighter.isValid || highlighter.endOffset <= endOffset) {
+        markupModel.removeHighlighter(highlighter)
+      } else {
+        highlighters[kept++] = highlighter
+      }
+    }
+    highlighters.subList(kept, to).clear()
+  }
+
+  /**
+   * Removes the highlighters invalidated by a deletion at [changeOffset]. A highlighter becomes invalid when its text is
+   * deleted, and keeps the offset it had before the change, so this has to be done before a binary search after a
+   * deletion.
+   *
+   * The stale offsets of the invalid highlighters are within the deleted text, so they come after all highlighters
+   * starting before [changeOffset] and before all highlighters starting after [changeEndOffset], which is the change
+   * offset plus the longest of the old and the new length. Only the highlighters between them are checked.
+   */
+  fun removeInvalid(markupModel: MarkupModel, changeOffset: Int, changeEndOffset: Int) {
+    val from = lowerBound(changeOffset)
+    var to = from
+    while (to < highlighters.size && highlighters[to].startOffset <= changeEndOffset) to++
+    var kept = from
+    for (i in from until to) {
+      val highlighter = highlighters[i]
+      if (highlighter.isValid) {
+        highlighters[kept++] = highlighter
+      } else {
+        markupModel.removeHighlighter(highlighter)
+      }
+    }
+    highlighters.subList(kept, to).clear()
+  }
+
+  fun removeAll(markupModel: MarkupModel) {
+    highlighters.forEach { markupModel.removeHighlighter(it) }
+    highlighters.clear()
+  }
+
+  /**
+   * Index of the first highlighter starting at or after [offset]
+   */
+  private fun lowerBound(offset: Int): Int {
+    var low = 0
+    var high = highlighters.size
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (highlighters[mid].startOffset < offset) low = mid + 1 else high = mid
+    }
+    return low
+  }
+
+  /**
+   * Index of the first highlighter starting after [offset]
+   */
+  private fun upperBound(offset: Int): Int {
+    var low = 0
+    var high = highlighters.size
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (highlighters[mid].startOffset <= offset) low = mid + 1 else high = mid
+    }
+    return low
+  }
+
+  override fun toString(): String = highlighters.toString()
+}
@@ -20,6 +20,8 @@
 
 package com.flop.idea.fim.helper
 
+import com.intellij.openapi.application.ModalityState
+import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.editor.colors.EditorColors
 import com.intellij.openapi.editor.colors.EditorColorsScheme
@@ -31,6 +33,7 @@ import com.intellij.openapi.editor.markup.TextAttributes
 import com.intellij.openapi.fileEditor.FileEditorManager
 import com.intellij.openapi.project.ProjectManager
 import com.intellij.ui.ColorUtil
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.flop.idea.fim.FimPlugin
 import com.flop.idea.fim.common.TextRange
 import com.flop.idea.fim.ex.ranges.LineRange
@@ -42,6 +45,17 @@ import java.awt.Color
 import java.awt.Font
 import java.util.*
 
+/**
+ * Documents with more lines than this get their hlsearch highlights for the visible lines first, and for the rest of
+ * the document in the background
+ */
+private const val VIEWPORT_FIRST_LINE_COUNT = 5000
+
+/**
+ * Coalescing key of the background searches, one search per editor runs at a time whatever its pattern
+ */
+private val REMAINING_MATCHES_SEARCH = Any()
+
 fun updateSearchHighlights(
   pattern: String?,
   shouldIgnoreSmartCase: Boolean,
@@ -108,10 +122,22 @@ private fun updateSearchHighlights(
 
       if (shouldAddAllSearchHighlights(editor, pattern, showHighlights)) {
         // hlsearch (+ incsearch/noincsearch)
+        val index = searchMatchIndex(editor, pattern, shouldIgnoreCase(pattern, shouldIgnoreSmartCase))
+        if (searchRange == null && !isIncrementalSearchHighlights(initialOffset) &&
+          editor.document.lineCount > VIEWPORT_FIRST_LINE_COUNT
+        ) {
+          // Large file, highlight the visible lines now and the rest of the file in the background
+          val visibleLines = visibleLogicalLines(editor)
+          val results = index.matches(editor, visibleLines.first, visibleLines.last)
+          highlightSearchResults(editor, pattern, results, -1)
+          editor.fimLastSearch = pattern
+          highlightRemainingMatches(editor, index)
+          continue
+        }
+
         val startLine = searchRange?.startLine ?: 0
-        val endLine = searchRange?.endLine ?: -1
-        val results =
-          com.flop.idea.fim.helper.SearchHelper.findAll(editor, pattern, startLine, endLine, shouldIgnoreCase(pattern, shouldIgnoreSmartCase))
+        val endLine = searchRange?.endLine ?: editor.document.lineCount
+        val results = index.matches(editor, startLine, endLine)
         if (results.isNotEmpty()) {
           currentMatchOffset = findClosestMatch(editor, results, initialOffset, forwards)
           highlightSearchResults(editor, pattern, results, currentMatchOffset)
@@ -154,13 +180,59 @@ private fun shouldRemoveSearchHighlights(editor: Editor, newPattern: String?, hl
 
 private fun removeSearchHighlights(editor: Editor) {
   editor.fimLastSearch = null
+  editor.document.fimSearchMatchIndex = null
   val ehl = editor.fimLastHighlighters ?: return
-  for (rh in ehl) {
-    editor.markupModel.removeHighlighter(rh)
-  }
+  ehl.removeAll(editor.markupModel)
   editor.fimLastHighlighters = null
 }
 
+/**
+ * Returns the match index of the editor's document, replacing it if it was built for another pattern
+ */
+private fun searchMatchIndex(editor: Editor, pattern: String, ignoreCase: Boolean): SearchMatchIndex {
+  val document = editor.document
+  val index = document.fimSearchMatchIndex
+  if (index != null && index.pattern == pattern && index.ignoreCase == ignoreCase) {
+    return index
+  }
+  return SearchMatchIndex(pattern, ignoreCase).also { document.fimSearchMatchIndex = it }
+}
+
+private fun visibleLogicalLines(editor: Editor): IntRange {
+  val topLine = EditorHelper.visualLineToLogicalLine(editor, EditorHelper.getVisualLineAtTopOfScreen(editor))
+  val bottomLine = EditorHelper.visualLineToLogicalLine(editor, EditorHelper.getVisualLineAtBottomOfScreen(editor))
+  return topLine..bottomLine
+}
+
+/**
+ * Searches the whole document in a cancellable background read action and replaces the editor's highlights with the
+ * result. The search is cancelled if the editor is disposed or the highlighted pattern changes, and restarted if the
+ * document is modified in the meantime. Lines that are already in the index are not searched again, large runs of
+ * unsearched lines are split between threads.
+ *
+ * The searches of an editor are coalesced, so starting the search of a new pattern cancels the running search of the
+ * previous one instead of waiting for it.
+ */
+private fun highlightRemainingMatches(editor: Editor, index: SearchMatchIndex) {
+  val document = editor.document
+  val pattern = index.pattern
+  ReadAction.nonBlocking<Pair<Long, List<TextRange>>> {
+    document.modificationStamp to index.matches(editor, 0, document.lineCount - 1)
+  }
+    .expireWhen { editor.isDisposed || editor.fimLastSearch != pattern || document.fimSearchMatchIndex !== index }
+    .coalesceBy(editor, REMAINING_MATCHES_SEARCH)
+    .finishOnUiThread(ModalityState.any()) { (modificationStamp, results) ->
+      if (document.modificationStamp != modificationStamp) {
+        highlightRemainingMatches(editor, index)
+        return@finishOnUiThread
+      }
+      editor.fimLastHighlighters?.removeAll(editor.markupModel)
+      editor.fimLastHighlighters = null
+      highlightSearchResults(editor, pattern, results, -1)
+    }
+    .submit(AppExecutorUtil.getAppExecutorService())
+}
+
 /**
  * Add search highlights if hlSearch is true and the pattern is changed
  */
@@ -205,14 +277,15 @@ private fun distance(range: TextRange, pos: Int, forwards: Boolean, size: Int):
 fun highlightSearchResults(editor: Editor, pattern: String, results: List<TextRange>, currentMatchOffset: Int) {
   var highlighters = editor.fimLastHighlighters
   if (highlighters == null) {
-    highlighters = mutableListOf()
+    highlighters = SearchHighlighters()
     editor.fimLastHighlighters = highlighters
   }
-  for (range in results) {
-    val current = range.startOffset == currentMatchOffset
-    val highlighter = highlightMatch(editor, range.startOffset, range.endOffset, current, pattern)
-    highlighters.add(highlighter)
-  }
+  highlighters.addAll(
+    results.map { range ->
+      val current = range.startOffset == currentMatchOffset
+      highlightMatch(editor, range.startOffset, range.endOffset, current, pattern)
+    }
+  )
   editor.fimIncsearchCurrentMatchOffset = currentMatchOffset
 }
 
@@ -0,0 +1,209 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.helper
+
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.progress.ProgressManager
+import com.flop.idea.fim.common.TextRange
+import com.flop.idea.fim.regexp.TextLines
+import java.util.*
+import kotlin.math.min
+
+/**
+ * Matches of the hlsearch pattern in a document, grouped by the line they start on.
+ *
+ * Matches are stored relative to the start of their line, so an edit only invalidates the lines it touches: the index
+ * is patched with [linesChanged] and the touched lines are searched again the next time they are requested. Lines are
+ * searched lazily, which allows to compute the visible part of the document first and the rest in the background.
+ *
+ * The index is stored in the document, so it is shared by all editors of the document.
+ */
+class SearchMatchIndex(val pattern: String, val ignoreCase: Boolean) {
+  /**
+   * For every line, pairs of (start column, length) of the matches starting on this line. Null if the line has not
+   * been searched yet
+   */
+  private val lines = ArrayList<IntArray?>()
+
+  /**
+   * The largest number of line breaks a match in the index spans. Zero as long as no match continues on the next line
+   */
+  private var maxMatchLineSpan = 0
+
+  /**
+   * Updates the index after a document change. Lines touched by the change are marked as not searched, the index
+   * of all following lines is shifted.
+   *
+   * A match starting on a previous line that ends at or after the change may not match anymore, so its line and the
+   * lines up to the change are marked as not searched too. Only matches spanning several lines can reach the change,
+   * so only the last [maxMatchLineSpan] lines are checked.
+   *
+   * @param changeOffset the offset of the change
+   * @param startLine    the first line touched by the change
+   * @param oldLineCount the number of lines the changed fragment occupied before the change
+   * @param newLineCount the number of lines the changed fragment occupies after the change
+   * @return the first line that has to be searched again
+   */
+  @Synchronized
+  fun linesChanged(document: Document, changeOffset: Int, startLine: Int, oldLineCount: Int, newLineCount: Int): Int {
+    val firstLine = firstLineReaching(document, changeOffset, startLine)
+    for (line in firstLine until min(startLine, lines.size)) {
+      lines[line] = null
+    }
+    if (startLine < lines.size) {
+      val removed = min(oldLineCount, lines.size - startLine)
+      lines.subList(startLine, startLine + removed).clear()
+      lines.addAll(startLine, Collections.nCopies(newLineCount, null))
+    }
+    resize(document.lineCount)
+    return firstLine
+  }
+
+  /**
+   * Returns the first line before [startLine] with a match ending at or after [changeOffset], or [startLine]. The text
+   * before the change is unchanged, so the offsets of these matches are still valid
+   */
+  private fun firstLineReaching(document: Document, changeOffset: Int, startLine: Int): Int {
+    for (line in maxOf(0, startLine - maxMatchLineSpan) until min(startLine, lines.size)) {
+      val matches = lines[line] ?: continue
+      val lineStart = document.getLineStartOffset(line)
+      for (i in matches.indices step 2) {
+        if (lineStart + matches[i] + matches[i + 1] >= changeOffset) return line
+      }
+    }
+    return startLine
+  }
+
+  /**
+   * Returns all matches starting in the given lines, searching the lines that are not in the index yet.
+   *
+   * The lines are processed in chunks and the computation may be cancelled between them when running under a
+   * progress indicator.
+   */
+  fun matches(editor: Editor, startLine: Int, endLine: Int): List<TextRange> {
+    val results = mutableListOf<TextRange>()
+    val lastLine = min(endLine, editor.document.lineCount - 1)
+    searchLargeRuns(editor, startLine, lastLine)
+    var line = startLine
+    while (line <= lastLine) {
+      ProgressManager.checkCanceled()
+      val chunkEnd = min(line + CHUNK_SIZE - 1, lastLine)
+      collectMatches(editor, line, chunkEnd, results)
+      line = chunkEnd + 1
+    }
+    return results
+  }
+
+  @Synchronized
+  private fun collectMatches(editor: Editor, startLine: Int, endLine: Int, results: MutableList<TextRange>) {
+    val document = editor.document
+    resize(document.lineCount)
+
+    var line = startLine
+    while (line <= endLine) {
+      if (lines[line] == null) {
+        var runEnd = line
+        while (runEnd < endLine && lines[runEnd + 1] == null) runEnd++
+        search(editor, line, runEnd)
+        line = runEnd + 1
+      } else {
+        line++
+      }
+    }
+
+    for (l in startLine..endLine) {
+      val matches = lines[l] ?: continue
+      val lineStart = document.getLineStartOffset(l)
+      for (i in matches.indices step 2) {
+        val start = lineStart + matches[i]
+        results.add(TextRange(start, start + matches[i + 1]))
+      }
+    }
+  }
+
+  /**
+   * Searches the runs of unsearched lines that are long enough to be split between threads with the parallel
+   * [SearchHelper.findAll]. This is the case for the background pass over the whole document, the visible lines are
+   * searched in chunks by [collectMatches].
+   */
+  @Synchronized
+  private fun searchLargeRuns(editor: Editor, startLine: Int, endLine: Int) {
+    val document = editor.document
+    resize(document.lineCount)
+
+    var text: TextLines? = null
+    var line = startLine
+    while (line <= endLine) {
+      if (lines[line] != null) {
+        line++
+        continue
+      }
+      var runEnd = line
+      while (runEnd < endLine && lines[runEnd + 1] == null) runEnd++
+      if (runEnd - line + 1 >= SearchHelper.PARALLEL_FIND_ALL_LINE_COUNT) {
+        if (text == null) text = TextLines(document.immutableCharSequence)
+        // Search past the last line to keep the results the same as a search of the whole file
+        val searchEndLine = if (runEnd >= document.lineCount - 1) document.lineCount else runEnd
+        val indicator = ProgressManager.getInstance().progressIndicator
+        val ranges = SearchHelper.findAll(text, document.lineCount, pattern, line, searchEndLine, ignoreCase, indicator)
+        store(editor, line, runEnd, ranges)
+      }
+      line = runEnd + 1
+    }
+  }
+
+  private fun search(editor: Editor, startLine: Int, endLine: Int) {
+    val document = editor.document
+    // Search past the last line to keep the results the same as a search of the whole file
+    val searchEndLine = if (endLine >= document.lineCount - 1) -1 else endLine
+    store(editor, startLine, endLine, SearchHelper.findAll(editor, pattern, startLine, searchEndLine, ignoreCase))
+  }
+
+  private fun store(editor: Editor, startLine: Int, endLine: Int, ranges: List<TextRange>) {
+    val document = editor.document
+    var index = 0
+    for (line in startLine..endLine) {
+      val lineStart = document.getLineStartOffset(line)
+      val lineEnd = document.getLineEndOffset(line)
+      var count = 0
+      while (index + count < ranges.size && ranges[index + count].startOffset <= lineEnd) count++
+      lines[line] = if (count == 0) NO_MATCHES else IntArray(count * 2) { i ->
+        val range = ranges[index + i / 2]
+        if (i % 2 == 0) range.startOffset - lineStart else range.endOffset - range.startOffset
+      }
+      for (i in index until index + count) {
+        if (ranges[i].endOffset > lineEnd) {
+          maxMatchLineSpan = maxOf(maxMatchLineSpan, document.getLineNumber(ranges[i].endOffset) - line)
+        }
+      }
+      index += count
+    }
+  }
+
+  private fun resize(lineCount: Int) {
+    while (lines.size < lineCount) lines.add(null)
+    if (lines.size > lineCount) lines.subList(lineCount, lines.size).clear()
+  }
+
+  companion object {
+    private const val CHUNK_SIZE = 1000
+    private val NO_MATCHES = IntArray(0)
+  }
+}
@@ -22,9 +22,9 @@
 package com.flop.idea.fim.helper
 
 import com.intellij.openapi.editor.Caret
+import com.intellij.openapi.editor.Document
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.editor.RangeMarker
-import com.intellij.openapi.editor.markup.RangeHighlighter
 import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.UserDataHolder
 import com.flop.idea.fim.api.CaretRegisterStorageBase
@@ -86,9 +86,12 @@ fun unInitializeEditor(editor: Editor) {
 }
 
 var Editor.fimLastSearch: String? by userData()
-var Editor.fimLastHighlighters: MutableCollection<RangeHighlighter>? by userData()
+var Editor.fimLastHighlighters: SearchHighlighters? by userData()
 var Editor.fimIncsearchCurrentMatchOffset: Int? by userData()
 
+// ------------------ Document
+var Document.fimSearchMatchIndex: SearchMatchIndex? by userData()
+
 /***
  * @see :help visualmode()
  */
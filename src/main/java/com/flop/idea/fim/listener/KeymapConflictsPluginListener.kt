@@ -0,0 +1,37 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.listener
+
+import com.intellij.ide.plugins.DynamicPluginListener
+import com.intellij.ide.plugins.IdeaPluginDescriptor
+import com.flop.idea.fim.FimPlugin
+
+/**
+ * Drops the cached keymap conflicts when a plugin is loaded or unloaded without a restart. The actions of the plugin
+ * and their shortcuts are then registered or removed, which the keymap listener doesn't report
+ */
+class KeymapConflictsPluginListener : DynamicPluginListener {
+  override fun pluginLoaded(pluginDescriptor: IdeaPluginDescriptor) {
+    FimPlugin.getKey().resetKeymapConflicts()
+  }
+
+  override fun pluginUnloaded(pluginDescriptor: IdeaPluginDescriptor, isUpdate: Boolean) {
+    FimPlugin.getKey().resetKeymapConflicts()
+  }
+}
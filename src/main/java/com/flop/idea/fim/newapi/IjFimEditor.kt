@@ -26,6 +26,7 @@ import com.intellij.openapi.editor.event.CaretEvent
 import com.intellij.openapi.editor.event.CaretListener
 import com.intellij.openapi.editor.ex.EditorEx
 import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.util.DocumentUtil
 import com.flop.idea.fim.api.ExecutionContext
 import com.flop.idea.fim.api.LineDeleteShift
 import com.flop.idea.fim.api.MutableLinearEditor
@@ -131,6 +132,14 @@ class IjFimEditor(editor: Editor) : MutableLinearEditor() {
     editor.document.insertString(atPosition.point, text)
   }
 
+  override fun replaceText(start: Offset, end: Offset, text: CharSequence) {
+    editor.document.replaceString(start.point, end.point, text)
+  }
+
+  override fun executeInBulk(changeCount: Int, action: () -> Unit) {
+    DocumentUtil.executeInBulk(editor.document, changeCount > BULK_CHANGE_COUNT) { action() }
+  }
+
   // TODO: 30.12.2021 Is end offset inclusive?
   override fun getLineRange(line: EditorLine.Pointer): Pair<Offset, Offset> {
     // TODO: 30.12.2021 getLineEndOffset returns the same value for "xyz" and "xyz\n"
@@ -439,6 +448,11 @@ class IjFimEditor(editor: Editor) : MutableLinearEditor() {
   override fun hashCode(): Int {
     error("equals and hashCode should not be used with IjFimEditor")
   }
+
+  companion object {
+    // Bulk mode has a fixed cost of its own, so a few changes are applied one by one
+    private const val BULK_CHANGE_COUNT = 100
+  }
 }
 
 val Editor.fim: IjFimEditor
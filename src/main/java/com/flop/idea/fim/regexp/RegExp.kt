@@ -18,6 +18,7 @@
 package com.flop.idea.fim.regexp
 
 import com.flop.idea.fim.api.FimEditor
+import com.flop.idea.fim.api.FimLines
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.diagnostic.FimLogger
 import com.flop.idea.fim.helper.Msg
@@ -167,7 +168,6 @@ class RegExp {
      * of the structure of the compiled regexp.
      */
   fun fim_regcomp(expr: String?, magic: Int): regprog_T? {
-    val r: regprog_T
     var scan: CharPointer
     var longest: CharPointer?
     var len: Int
@@ -176,76 +176,106 @@ class RegExp {
       injector.messages.showStatusBarMessage(injector.messages.message(Msg.e_null))
       return null
     }
-    r = regprog_T()
+    val program = StringBuffer()
 
         /*
          * Second pass: emit code.
          */regcomp_start(expr, magic)
-    regcode = CharPointer(r.program)
+    regcode = CharPointer(program)
     regc(REGMAGIC)
     if (reg(REG_NOPAREN, flags) == null) {
+      regcode = null
       return null
     }
+    regcode = null
 
-    /* Dig out information for optimizations. */r.regstart = 0.toChar() /* Worst-case defaults. */
-    r.reganch = 0.toChar()
-    r.regmust = null
-    r.regmlen = 0
-    r.regflags = regflags
+    /* Dig out information for optimizations. */var regstart = 0.toChar() /* Worst-case defaults. */
+    var reganch = 0.toChar()
+    var regmust: String? = null
+    var regstartset: String? = null
+    var progflags = regflags
     if (flags.isSet(HASNL)) {
-      r.regflags = r.regflags or RF_HASNL
+      progflags = progflags or RF_HASNL
     }
-    /* Remember whether this pattern has any \z specials in it. */r.reghasz = re_has_z
-    scan = CharPointer(r.program).ref(1) /* First BRANCH. */
+    scan = CharPointer(program).ref(1) /* First BRANCH. */
     if (regnext(scan)!!.OP() == END) /* Only one top-level choice. */ {
       scan = scan.OPERAND()
 
       /* Starting-point info. */if (scan.OP() == BOL || scan.OP() == RE_BOF) {
-        r.reganch++
+        reganch++
         scan = regnext(scan)!!
       }
       if (scan.OP() == EXACTLY) {
-        r.regstart = scan.OPERAND().charAt()
+        regstart = scan.OPERAND().charAt()
       } else if ((scan.OP() == BOW || scan.OP() == EOW || scan.OP() == NOTHING || scan.OP() == MOPEN || scan.OP() == NOPEN || scan.OP() == MCLOSE || scan.OP() == NCLOSE) &&
         regnext(scan)!!.OP() == EXACTLY
       ) {
-        r.regstart = regnext(scan)!!.OPERAND().charAt()
+        regstart = regnext(scan)!!.OPERAND().charAt()
       }
 
             /*
-             * If there's something expensive in the r.e., find the longest
-             * literal string that must appear and make it the regmust.  Resolve
-             * ties in favor of later strings, since the regstart check works
-             * with the beginning of the r.e. and avoiding duplication
-             * strengthens checking.  Not a strong reason, but sufficient in the
-             * absence of others.
-             */
-            /*
-             * When the r.e. starts with BOW, it is faster to look for a regmust
-             * first. Used a lot for "#" and "*" commands. (Added by mool).
-             */if ((flags.isSet(SPSTART) || scan.OP() == BOW || scan.OP() == EOW) &&
-        !flags.isSet(HASNL)
-      ) {
+             * Find the longest literal string that must appear and make it the
+             * regmust.  Resolve ties in favor of later strings, since the
+             * regstart check works with the beginning of the r.e. and avoiding
+             * duplication strengthens checking.  Not a strong reason, but
+             * sufficient in the absence of others.
+             * Vim only does this when there's something expensive in the r.e.,
+             * but looking for the string is cheap compared to trying the
+             * program at every candidate column, and it rejects most lines of a
+             * buffer at once.
+             */if (!flags.isSet(HASNL)) {
         longest = null
         len = 0
-        while (scan != null) {
-          val so = scan.OPERAND()
-          if (scan.OP() == EXACTLY && so.strlen() >= len) {
+        var node: CharPointer? = scan
+        while (node != null) {
+          val so = node.OPERAND()
+          if (node.OP() == EXACTLY && so.strlen() >= len) {
             longest = so.ref(0)
             len = so.strlen()
           }
-          scan = regnext(scan)!!
+          node = regnext(node)
         }
-        if (longest != null) {
-          r.regmust = longest.ref(0)
+        if (longest != null && len > 0) {
+          regmust = longest.substring(len)
         }
-        r.regmlen = len
       }
+    } else {
+      regstartset = find_regstartset(scan)
     }
+    /* Remember whether this pattern has any \z specials in it. */
+    val r = regprog_T(regstart, regstartset, reganch, regmust, progflags, re_has_z, program.toString())
     if (logger.isDebug()) logger.debug(regdump(expr, r))
     return r
   }
 
+    /*
+     * Collect the characters a match must start with when there are several
+     * top-level choices, like "foo\|bar".  "scan" points to the first BRANCH.
+     * Return null when one of the choices can start with any character.
+     */
+  private fun find_regstartset(scan: CharPointer): String? {
+    val chars = StringBuilder()
+    var branch: CharPointer? = scan
+    while (branch != null && branch.OP() == BRANCH) {
+      var op = branch.OPERAND()
+      if (op.OP() == BOW || op.OP() == EOW || op.OP() == NOTHING || op.OP() == MOPEN || op.OP() == NOPEN || op.OP() == MCLOSE || op.OP() == NCLOSE) {
+        op = regnext(op) ?: return null
+      }
+      if (op.OP() != EXACTLY) {
+        return null
+      }
+      val c = op.OPERAND().charAt()
+      if (c == '\u0000') {
+        return null
+      }
+      if (chars.indexOf(c) == -1) {
+        chars.append(c)
+      }
+      branch = regnext(branch)
+    }
+    return if (chars.isEmpty()) null else chars.toString()
+  }
+
     /*
      * Setup to parse the regexp.  Used once to get the length and once to do it.
      */
@@ -1469,16 +1499,17 @@ class RegExp {
      * Get pointer to the line "lnum", which is relative to "reg_firstlnum".
      */
   private fun reg_getline(lnum: Int): CharPointer? {
+    /* matching a string: there is only one line */
+    if (reg_strline != null) {
+      return if (lnum == 0) reg_strline!!.ref(0) else null
+    }
         /* when looking behind for a match/no-match lnum is negative.  But we
          * can't go before line 1 */
-    return if (reg_firstlnum + lnum < 0) {
-      null
-    } else CharPointer(
-      injector.engineEditorHelper.getLineBuffer(
-        reg_buf!!,
-        reg_firstlnum + lnum
-      )
-    )
+    if (reg_firstlnum + lnum < 0) {
+      return null
+    }
+    val lines = reg_lines ?: return null
+    return lines.getLine(reg_firstlnum + lnum)
 
     // return ml_get_buf(reg_buf, reg_firstlnum + lnum, false);
   }
@@ -1518,6 +1549,10 @@ class RegExp {
     // FimEditor save_curbuf = curbuf;
     reg_match = null
     reg_mmatch = rmp
+    if (buf == null || buf !== reg_buf || reg_lines == null) {
+      /* keep the lines when searching the same buffer line by line */
+      reg_lines = if (buf != null) injector.engineEditorHelper.getLines(buf) else null
+    }
     reg_buf = buf
     // reg_win = win;
     reg_firstlnum = lnum
@@ -1531,65 +1566,45 @@ class RegExp {
     return r
   }
 
-  fun fim_string_contains_regexp(rmp: regmmatch_T, string: String): Boolean {
+    /*
+     * Match a regexp against multiple lines given directly, e.g. a text snapshot.
+     * Works like fim_regexec_multi() with a buffer, but doesn't touch the editor, so with an immutable text it can
+     * be used from any thread.  Patterns that depend on the cursor position never match.
+     */
+  fun fim_regexec_multi(rmp: regmmatch_T, lines: FimLines, lcount: Int, lnum: Int, col: Int): Int {
     reg_match = null
     reg_mmatch = rmp
+    reg_buf = null
+    reg_lines = lines
+    reg_firstlnum = lnum
+    reg_maxline = lcount - lnum
     ireg_ic = rmp.rmm_ic
-    val prog: regprog_T?
-    var s: CharPointer
-    var retval = 0
-    reg_tofree = null
-    prog = reg_mmatch!!.regprog
-    val line = CharPointer(string)
-    reg_startpos = reg_mmatch!!.startpos
-    reg_endpos = reg_mmatch!!.endpos
-
-    /* Be paranoid... */if (prog == null) {
-      injector.messages.showStatusBarMessage(injector.messages.message(Msg.e_null))
-      return false
-    }
-
-    /* Check validity of program. */if (prog_magic_wrong()) {
-      return false
-    }
-
-    /* If pattern contains "\c" or "\C": overrule value of ireg_ic */if (prog.regflags and RF_ICASE != 0) {
-      ireg_ic = true
-    } else if (prog.regflags and RF_NOICASE != 0) {
-      ireg_ic = false
-    }
+    return fim_regexec_both(null, col)
+  }
 
-    /* If there is a "must appear" string, look for it. */if (prog.regmust != null) {
-      val c: Char
-      c = prog.regmust!!.charAt()
-      s = line
-      while (cstrchr(s, c).also { s = it!! } != null) {
-        if (cstrncmp(s, prog.regmust!!, prog.regmlen) == 0) {
-          break /* Found it. */
-        }
-        s.inc()
-      }
-      if (s == null) /* Not present. */ {
-        // goto the end;
-        return false
-      }
-    }
-    regline = line.ref(0)
-    reglnum = 0
-    out_of_stack = false
-    val col = 0
-    /* Simplest case: Anchored match need be tried only once. */
-    val c: Char
-    c = regline!!.charAt(col)
-    if (prog.regstart == '\u0000' || prog.regstart == c ||
-      ireg_ic && prog.regstart.lowercaseChar() == c.lowercaseChar()
-    ) {
-      retval = regtry(prog, col)
-    }
-    if (out_of_stack) {
-      injector.messages.showStatusBarMessage(injector.messages.message(Msg.E363))
+    /*
+     * Match a regexp against a string that is not a part of a buffer.
+     * Unlike fim_regexec_multi() the text is given directly: it is scanned once,
+     * trying every column from "col" on, without copying it.
+     * "rmp->regprog" is a compiled regexp as returned by fim_regcomp().
+     *
+     * Return true if there is a match, false if not.  The match position is
+     * stored in "rmp->startpos" and "rmp->endpos", always in line 0.
+     */
+  @JvmOverloads
+  fun fim_string_search(rmp: regmmatch_T, text: CharSequence, col: Int = 0): Boolean {
+    reg_match = null
+    reg_mmatch = rmp
+    reg_buf = null
+    reg_strline = if (text is String) CharPointer(text) else CharPointer(text, 0, text.length)
+    reg_firstlnum = 0
+    reg_maxline = 0
+    ireg_ic = rmp.rmm_ic
+    try {
+      return fim_regexec_both(null, col) != 0
+    } finally {
+      reg_strline = null
     }
-    return retval > 0
   }
 
     /*
@@ -1631,16 +1646,7 @@ class RegExp {
     }
 
     /* If there is a "must appear" string, look for it. */if (prog.regmust != null) {
-      val c: Char
-      c = prog.regmust!!.charAt()
-      s = line.ref(col)
-      while (cstrchr(s!!, c).also { s = it } != null) {
-        if (cstrncmp(s!!, prog.regmust!!, prog.regmlen) == 0) {
-          break /* Found it. */
-        }
-        s!!.inc()
-      }
-      if (s == null) /* Not present. */ {
+      if (!line.contains(prog.regmust, col, ireg_ic)) /* Not present. */ {
         // goto theend;
         return retval
       }
@@ -1670,6 +1676,13 @@ class RegExp {
             break
           }
           col = s!!.pointer() - regline!!.pointer()
+        } else if (prog.regstartset != null) {
+          /* Skip until one of the chars the choices start with. */
+          col = regline!!.indexOfAny(prog.regstartset, col, ireg_ic)
+          if (col < 0) {
+            retval = 0
+            break
+          }
         }
         retval = regtry(prog, col)
         if (retval > 0) {
@@ -1695,6 +1708,26 @@ class RegExp {
     return retval
   }
 
+    /*
+     * Forget the buffer, lines and sub-matches of the last match, so that an
+     * idle matcher doesn't keep the editor or its text alive.  The compiled
+     * program is not owned by the matcher and is left alone.
+     */
+  fun reset_match_state() {
+    reg_match = null
+    reg_mmatch = null
+    reg_buf = null
+    reg_lines = null
+    regline = null
+    reginput = null
+    reg_tofree = null
+    behind_pos = null
+    re_extmatch_out = null
+    re_extmatch_in = null
+    Arrays.fill(reg_startzp, null)
+    Arrays.fill(reg_endzp, null)
+  }
+
   class reg_extmatch_T {
     var matches = arrayOfNulls<String>(NSUBEXP)
   }
@@ -1843,7 +1876,8 @@ class RegExp {
           CURSOR -> {
                         /* Check if the buffer is in a window and compare the
                          * reg_win->w_cursor position to the match position. */
-            val curpos = reg_buf!!.currentCaret().getLogicalPosition()
+            val buf = reg_buf ?: return false
+            val curpos = buf.currentCaret().getLogicalPosition()
             if (reglnum + reg_firstlnum != curpos.line ||
               reginput!!.pointer() - regline!!.pointer() != curpos.column
             ) {
@@ -3514,11 +3548,14 @@ class RegExp {
       res.append("' ")
       res.append(Integer.toString(r.regstart.code, 16))
     }
+    if (r.regstartset != null) {
+      res.append("start one of \"").append(r.regstartset).append("\" ")
+    }
     if (r.reganch.code != 0) {
       res.append("anchored: ")
     }
     if (r.regmust != null) {
-      res.append("must have \"").append(r.regmust!!.substring(r.regmust!!.strlen())).append("\"")
+      res.append("must have \"").append(r.regmust).append("\"")
     }
     res.append("\n")
     return res.toString()
@@ -3658,14 +3695,23 @@ class RegExp {
     return buf.toString()
   }
 
-  class regprog_T {
-    var regstart = 0.toChar()
-    var reganch = 0.toChar()
-    var regmust: CharPointer? = null
-    var regmlen = 0
-    var regflags = 0
-    var reghasz = 0.toChar()
-    var program = StringBuffer()
+  /**
+   * Compiled program as returned by [fim_regcomp].
+   *
+   * It's immutable and holds no reference to the engine that compiled it, so one instance can be shared between any
+   * number of matchers and threads. All the matching state lives in the [RegExp] instance that executes it.
+   */
+  class regprog_T(
+    val regstart: Char,
+    val regstartset: String?,
+    val reganch: Char,
+    val regmust: String?,
+    val regflags: Int,
+    val reghasz: Char,
+    val program: String,
+  ) {
+    val regmlen: Int
+      get() = regmust?.length ?: 0
   }
 
   private class MinMax {
@@ -3736,6 +3782,10 @@ class RegExp {
     }
   }
 
+  /* \z(...\) matches of the last match and the external matches used for \z1 - \z9 */
+  var re_extmatch_out: reg_extmatch_T? = null
+  var re_extmatch_in: reg_extmatch_T? = null
+
   private val reg_do_extmatch = 0
   private val reg_prev_sub: CharPointer? = null
   private var regparse /* Input-scan pointer. */: CharPointer? = null
@@ -3825,6 +3875,8 @@ class RegExp {
 
   // static win_T            *reg_win;
   private var reg_buf: FimEditor? = null
+  private var reg_strline: CharPointer? = null /* line used instead of reg_buf by fim_string_search() */
+  private var reg_lines: FimLines? = null /* lines of reg_buf or of a text snapshot */
   private var reg_firstlnum = 0
   private var reg_maxline = 0
   private var behind_pos: regsave_T? = null
@@ -3843,9 +3895,6 @@ class RegExp {
   private var bl_maxval = 0
 
   companion object {
-    var re_extmatch_out: reg_extmatch_T? = null
-    var re_extmatch_in: reg_extmatch_T? = null
-
         /*
      * The opcodes are:
      */
@@ -0,0 +1,89 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.regexp
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded LRU cache of compiled regexp programs.
+ *
+ * `n`/`N`, incsearch, hlsearch, `:s` and `:g` usually reuse the same pattern over and over again, so there is no need
+ * to run [RegExp.fim_regcomp] for every one of them. The compiled [RegExp.regprog_T] is never modified while matching,
+ * so a single instance can be shared between all callers.
+ *
+ * The cache key is the pattern text and its magicness. Case sensitivity is not a part of the key: 'ignorecase' and
+ * 'smartcase' are applied at execution time via [RegExp.regmmatch_T.rmm_ic], and `\c`/`\C` are already a part of the
+ * pattern text.
+ *
+ * Patterns that fail to compile are not cached, so the error message is reported every time.
+ */
+object RegExpCache {
+  private const val MAX_SIZE = 64
+
+  private data class Key(val pattern: String, val magic: Int)
+
+  private val programs = object : LinkedHashMap<Key, RegExp.regprog_T>(MAX_SIZE, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, RegExp.regprog_T>?): Boolean {
+      return size > MAX_SIZE
+    }
+  }
+
+  private val hitCount = AtomicLong()
+  private val missCount = AtomicLong()
+
+  val hits: Long
+    get() = hitCount.get()
+
+  val misses: Long
+    get() = missCount.get()
+
+  /**
+   * Returns the compiled program for [pattern], compiling it on a cache miss.
+   *
+   * @return the compiled program, or null if the pattern is invalid. The error is reported by [RegExp.fim_regcomp]
+   */
+  @JvmStatic
+  @JvmOverloads
+  fun compile(pattern: String, magic: Int = 1): RegExp.regprog_T? {
+    val key = Key(pattern, magic)
+    synchronized(programs) {
+      val cached = programs[key]
+      if (cached != null) {
+        hitCount.incrementAndGet()
+        return cached
+      }
+    }
+    missCount.incrementAndGet()
+
+    // Compilation state lives in the RegExp instance, so use a fresh one and don't hold the lock while compiling
+    val program = RegExp().fim_regcomp(pattern, magic) ?: return null
+    synchronized(programs) {
+      return programs.putIfAbsent(key, program) ?: program
+    }
+  }
+
+  @JvmStatic
+  fun clear() {
+    synchronized(programs) {
+      programs.clear()
+    }
+    hitCount.set(0)
+    missCount.set(0)
+  }
+}
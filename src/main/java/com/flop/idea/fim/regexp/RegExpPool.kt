@@ -0,0 +1,64 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.flop.idea.fim.regexp
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Pool of [RegExp] matchers.
+ *
+ * A [RegExp] instance only holds the state of the match in progress, while the compiled [RegExp.regprog_T] is
+ * immutable and shared (see [RegExpCache]). Every thread that needs to match acquires its own matcher, so highlighting,
+ * `:g` and `:s` can run concurrently, and hot paths don't have to allocate a new engine for every search.
+ *
+ * A matcher must not be used after it was released.
+ */
+object RegExpPool {
+  private const val MAX_IDLE = 8
+
+  private val idle = ConcurrentLinkedQueue<RegExp>()
+  private val idleCount = AtomicInteger()
+
+  @JvmStatic
+  fun acquire(): RegExp {
+    val regExp = idle.poll() ?: return RegExp()
+    idleCount.decrementAndGet()
+    return regExp
+  }
+
+  @JvmStatic
+  fun release(regExp: RegExp) {
+    regExp.reset_match_state()
+    if (idleCount.incrementAndGet() <= MAX_IDLE) {
+      idle.offer(regExp)
+    } else {
+      idleCount.decrementAndGet()
+    }
+  }
+
+  inline fun <T> use(action: (RegExp) -> T): T {
+    val regExp = acquire()
+    try {
+      return action(regExp)
+    } finally {
+      release(regExp)
+    }
+  }
+}
@@ -19,9 +19,13 @@ package org.jetbrains.plugins.ideafim.action
 
 import com.intellij.codeInsight.folding.CodeFoldingManager
 import com.intellij.codeInsight.folding.impl.FoldingUtil
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.flop.idea.fim.FimPlugin
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.FimStateMachine
 import com.flop.idea.fim.helper.FimBehaviorDiffers
+import com.flop.idea.fim.newapi.fim
 import org.jetbrains.plugins.ideafim.SkipNeofimReason
 import org.jetbrains.plugins.ideafim.TestWithoutNeofim
 import org.jetbrains.plugins.ideafim.FimTestCase
@@ -470,6 +474,56 @@ quux
     )
   }
 
+  fun testDeleteJoinLinesWithEmptyAndIndentedLines() {
+    doTest(
+      "5J",
+      """
+        ${c}a
+        ..b..
+
+        ...c
+        d
+        e
+      """.dotToSpace().trimIndent(),
+      "a b  c d\ne", FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE
+    )
+  }
+
+  fun testDeleteJoinManyLines() {
+    doTest(
+      "2000J",
+      "${c}" + "x\n".repeat(2000) + "end",
+      "x ".repeat(1999) + "x\nend", FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE
+    )
+  }
+
+  fun testDeleteJoinManyLinesInBulk() {
+    configureByText("${c}" + "x\n".repeat(2000) + "end")
+    val inBulk = mutableListOf<Boolean>()
+    myFixture.editor.document.addDocumentListener(
+      object : DocumentListener {
+        override fun documentChanged(event: DocumentEvent) {
+          inBulk.add(event.document.isInBulkUpdate)
+        }
+      },
+      myFixture.testRootDisposable
+    )
+    typeText(injector.parser.parseKeys("2000J"))
+    assertEquals("x ".repeat(1999) + "x\nend", myFixture.editor.document.text)
+    // One change per join, all of them in a single bulk update
+    assertEquals(1999, inBulk.size)
+    assertTrue(inBulk.all { it })
+  }
+
+  fun testDeleteJoinLinesKeepsMarks() {
+    configureByText("${c}one\ntwo\n  three\nfour")
+    typeText(injector.parser.parseKeys("j" + "ma" + "j" + "mb" + "j" + "mc" + "gg" + "3J"))
+    assertState("one two$c three\nfour")
+    assertEquals(0, FimPlugin.getMark().getMark(myFixture.editor.fim, 'a')!!.logicalLine)
+    assertEquals(0, FimPlugin.getMark().getMark(myFixture.editor.fim, 'b')!!.logicalLine)
+    assertEquals(1, FimPlugin.getMark().getMark(myFixture.editor.fim, 'c')!!.logicalLine)
+  }
+
   fun testDeleteJoinVisualLinesSpaces() {
     doTest(
       "v2jJ",
@@ -18,6 +18,7 @@
 
 package org.jetbrains.plugins.ideafim.action.change.insert
 
+import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.FimStateMachine
 import org.jetbrains.plugins.ideafim.FimTestCase
 
@@ -26,4 +27,23 @@ class InsertBeforeCursorActionTest : FimTestCase() {
     doTest("i", "123", "123", FimStateMachine.Mode.INSERT, FimStateMachine.SubMode.NONE)
     assertCaretsVisualAttributes()
   }
+
+  fun `test insert with count`() {
+    doTest("3ihello<Esc>", "one ${c}two", "one hellohellohell${c}otwo", FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE)
+  }
+
+  fun `test insert with large count`() {
+    configureByText("${c}end")
+    typeText(injector.parser.parseKeys("1000ihello<Esc>"))
+    assertEquals("hello".repeat(1000) + "end", myFixture.editor.document.text)
+    assertOffset(5 * 1000 - 1)
+  }
+
+  fun `test repeat insert with count`() {
+    doTest("2iab<Esc>w.", "${c}one two", "ababone aba${c}btwo", FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE)
+  }
+
+  fun `test insert with count and multiple carets`() {
+    doTest("2ix<Esc>", "${c}one\n${c}two", "x${c}xone\nx${c}xtwo", FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE)
+  }
 }
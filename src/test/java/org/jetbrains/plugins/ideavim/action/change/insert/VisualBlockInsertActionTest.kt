@@ -205,4 +205,12 @@ Xbar
       FimStateMachine.SubMode.NONE
     )
   }
+
+  @TestWithoutNeofim(SkipNeofimReason.VISUAL_BLOCK_MODE)
+  fun `test insert in a large block`() {
+    configureByText("${c}foo\n" + "bar\n".repeat(999))
+    typeText(injector.parser.parseKeys("<C-V>" + "999j" + "I" + "a" + "b" + "<Esc>"))
+    assertEquals("abfoo\n" + "abbar\n".repeat(999), myFixture.editor.document.text)
+    assertOffset(0)
+  }
 }
@@ -23,6 +23,8 @@ import com.intellij.codeInsight.editorActions.CopyPastePreProcessor
 import com.intellij.codeInsight.editorActions.TextBlockTransferableData
 import com.intellij.openapi.editor.CaretStateTransferableData
 import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
 import com.intellij.psi.PsiFile
 import com.intellij.testFramework.ExtensionTestUtil
 import com.flop.idea.fim.FimPlugin
@@ -131,6 +133,61 @@ class PutTestAfterCursorActionTest : FimTestCase() {
     assertState(after)
   }
 
+  fun `test put text with large count`() {
+    setRegister('a', "ab")
+    configureByText("${c}x")
+    typeText(injector.parser.parseKeys("\"a10000p"))
+    assertEquals("x" + "ab".repeat(10000), myFixture.editor.document.text)
+  }
+
+  fun `test put block with count`() {
+    configureByText("${c}ab\ncd\nef")
+    typeText(injector.parser.parseKeys("<C-V>jly" + "2p"))
+    assertEquals("aababb\nccdcdd\nef", myFixture.editor.document.text)
+  }
+
+  fun `test put block past the last line`() {
+    configureByText("${c}ab\ncd\nx")
+    typeText(injector.parser.parseKeys("<C-V>jly" + "G" + "p"))
+    assertEquals("ab\ncd\nxab\n cd", myFixture.editor.document.text)
+  }
+
+  fun `test undo put block with count`() {
+    configureByText("${c}ab\ncd\nef")
+    typeText(injector.parser.parseKeys("<C-V>jly" + "3p" + "u"))
+    assertEquals("ab\ncd\nef", myFixture.editor.document.text)
+  }
+
+  fun `test put large block in bulk`() {
+    configureByText("${c}" + "ab\n".repeat(500))
+    typeText(injector.parser.parseKeys("<C-V>499jly"))
+    val inBulk = mutableListOf<Boolean>()
+    myFixture.editor.document.addDocumentListener(
+      object : DocumentListener {
+        override fun documentChanged(event: DocumentEvent) {
+          inBulk.add(event.document.isInBulkUpdate)
+        }
+      },
+      myFixture.testRootDisposable
+    )
+    typeText(injector.parser.parseKeys("p"))
+    assertEquals("aabb\n".repeat(500), myFixture.editor.document.text)
+    assertEquals(500, inBulk.size)
+    assertTrue(inBulk.all { it })
+  }
+
+  fun `test put block keeps marks inside the block`() {
+    configureByText("${c}ab\ncd\nef")
+    typeText(injector.parser.parseKeys("j" + "ma" + "j" + "mb" + "gg" + "<C-V>jly" + "p"))
+    assertEquals("aabb\nccdd\nef", myFixture.editor.document.text)
+    val markA = FimPlugin.getMark().getMark(myFixture.editor.fim, 'a')!!
+    assertEquals(1, markA.logicalLine)
+    assertEquals(0, markA.col)
+    val markB = FimPlugin.getMark().getMark(myFixture.editor.fim, 'b')!!
+    assertEquals(2, markB.logicalLine)
+    assertEquals(0, markB.col)
+  }
+
   private class TestExtension : CopyPastePostProcessor<TextBlockTransferableData>() {
     var calledExtractTransferableData = 0
     override fun collectTransferableData(
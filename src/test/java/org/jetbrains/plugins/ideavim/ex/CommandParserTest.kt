@@ -30,6 +30,7 @@ import com.flop.idea.fim.fimscript.model.commands.NormalCommand
 import com.flop.idea.fim.fimscript.model.expressions.Scope
 import com.flop.idea.fim.fimscript.model.expressions.SimpleExpression
 import com.flop.idea.fim.fimscript.model.expressions.Variable
+import com.flop.idea.fim.fimscript.model.statements.IfStatement
 import com.flop.idea.fim.fimscript.parser.FimscriptParser
 import com.flop.idea.fim.fimscript.parser.errors.IdeafimErrorListener
 import org.jetbrains.plugins.ideafim.SkipNeofimReason
@@ -309,6 +310,28 @@ class CommandParserTest : FimTestCase() {
     assertEquals(SimpleExpression(10), let2.expression)
   }
 
+  fun `test lines with errors are skipped inside of blocks`() {
+    configureByText("\n")
+    val script = FimscriptParser.parse(
+      """
+        if 1
+          echo (*
+          let g:y = 10
+        endif
+        *(
+        let g:z = 20
+      """.trimIndent()
+    )
+    assertTrue(IdeafimErrorListener.testLogger.any { it.startsWith("line 2:") })
+    assertTrue(IdeafimErrorListener.testLogger.any { it.startsWith("line 5:0") })
+    assertEquals(2, script.units.size)
+    val ifStatement = script.units[0] as IfStatement
+    assertEquals(1, ifStatement.conditionToBody.size)
+    assertEquals(1, ifStatement.conditionToBody[0].second.size)
+    assertTrue(ifStatement.conditionToBody[0].second[0] is LetCommand)
+    assertEquals(Variable(Scope.GLOBAL_VARIABLE, "z"), (script.units[1] as LetCommand).variable)
+  }
+
   @TestWithoutNeofim(reason = SkipNeofimReason.NOT_VIM_TESTING)
   fun `test bug with caret return symbol`() {
     configureByText("----------\n1234${c}567890\n----------\n")
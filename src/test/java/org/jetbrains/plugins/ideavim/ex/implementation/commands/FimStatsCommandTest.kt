@@ -0,0 +1,74 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.ex.implementation.commands
+
+import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.diagnostic.KeyHandlerStats
+import com.flop.idea.fim.ex.ExOutputModel
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+import java.io.File
+
+class FimStatsCommandTest : FimTestCase() {
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test keys are recorded`() {
+    configureByText("${c}one two three\n")
+    KeyHandlerStats.reset()
+    typeText(injector.parser.parseKeys("wx"))
+    assertEquals(2L, KeyHandlerStats.getPhase(KeyHandlerStats.Phase.KEY).count)
+    assertEquals(2L, KeyHandlerStats.getPhase(KeyHandlerStats.Phase.ACTION).count)
+    // Only `x` changes the document
+    assertEquals(1L, KeyHandlerStats.getPhase(KeyHandlerStats.Phase.WRITE_ACTION).count)
+    assertTrue(KeyHandlerStats.getPhase(KeyHandlerStats.Phase.LISTENERS).count > 0)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test shows stats`() {
+    configureByText("${c}one two three\n")
+    KeyHandlerStats.reset()
+    typeText(injector.parser.parseKeys("w"))
+    enterCommand("fimstats")
+    val output = ExOutputModel.getInstance(myFixture.editor).text!!
+    assertTrue(output.startsWith("--- Key handling latency (µs) ---\n"))
+    assertTrue(output.contains("\n--- Actions (µs) ---\n"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test reset stats`() {
+    configureByText("${c}one two three\n")
+    typeText(injector.parser.parseKeys("w"))
+    enterCommand("fimstats!")
+    // The command node of <CR> is found before the command resets the stats
+    assertEquals(0L, KeyHandlerStats.getPhase(KeyHandlerStats.Phase.COMMAND_NODE).count)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test write stats to file`() {
+    configureByText("${c}one two three\n")
+    typeText(injector.parser.parseKeys("w"))
+    val file = File.createTempFile("fimstats", ".txt")
+    try {
+      enterCommand("fimstats ${file.path}")
+      assertTrue(file.readText().startsWith("--- Key handling latency (µs) ---\n"))
+    } finally {
+      file.delete()
+    }
+  }
+}
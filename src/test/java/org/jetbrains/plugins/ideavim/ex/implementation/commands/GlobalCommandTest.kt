@@ -234,6 +234,59 @@ class GlobalCommandTest : FimTestCase() {
     assertExOutput("I found it in a legendary land\n")
   }
 
+  fun `test delete stores lines in registers`() {
+    doTest(
+      "g/it/d",
+      initialText,
+      """
+            A Discovery
+
+            all rocks and lavender and tufted grass,
+            hard by the torrent of a mountain pass. 
+      """.trimIndent(),
+    )
+    val registers = FimPlugin.getRegister()
+    assertEquals("where it was settled on some sodden sand\n", registers.getRegister('"')?.text)
+    assertEquals("where it was settled on some sodden sand\n", registers.getRegister('1')?.text)
+    assertEquals("I found it in a legendary land\n", registers.getRegister('2')?.text)
+  }
+
+  fun `test delete to register`() {
+    doTest(
+      "g/it/d a",
+      initialText,
+      """
+            A Discovery
+
+            all rocks and lavender and tufted grass,
+            hard by the torrent of a mountain pass. 
+      """.trimIndent(),
+    )
+    assertEquals("where it was settled on some sodden sand\n", FimPlugin.getRegister().getRegister('a')?.text)
+  }
+
+  fun `test delete all lines`() {
+    doTest("g/^/d", initialText, "")
+  }
+
+  fun `test vglobal delete last lines`() {
+    doTest(
+      "v/it\\|Discovery/d",
+      initialText,
+      """
+            A Discovery
+            I found it in a legendary land
+            where it was settled on some sodden sand
+      """.trimIndent(),
+    )
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test delete in large range`() {
+    val before = "keep\ndrop\n".repeat(10_000) + "end"
+    doTest("g/drop/d", before, "keep\n".repeat(10_000) + "end")
+  }
+
   private fun doTest(command: String, before: String, after: String) {
     doTest(listOf(exCommand(command)), before, after, FimStateMachine.Mode.COMMAND, FimStateMachine.SubMode.NONE)
   }
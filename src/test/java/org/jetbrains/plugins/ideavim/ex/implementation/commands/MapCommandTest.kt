@@ -968,4 +968,76 @@ n  ,i            <Action>(Back)
     assertExOutput("42\n")
     assertEquals("map A :echo 42<CR>", injector.historyGroup.getEntries(HistoryConstants.COMMAND, 0, 0).last().entry)
   }
+
+  fun `test expression mapping used repeatedly with count`() {
+    configureByText("${c}abcdefghij\n")
+    typeText(commandToKeys("nnoremap <expr> Q col('.') < 5 ? 'l' : 'h'"))
+    typeText(injector.parser.parseKeys("Q"))
+    assertOffset(1)
+    typeText(injector.parser.parseKeys("2Q"))
+    assertOffset(3)
+    typeText(injector.parser.parseKeys("3Q"))
+    assertOffset(6)
+    typeText(injector.parser.parseKeys("Q" + "2Q"))
+    assertOffset(3)
+  }
+
+  fun `test expression mapping completes pending operator`() {
+    configureByText("${c}one two three\n")
+    typeText(commandToKeys("onoremap <expr> Q col('.') == 1 ? 'w' : 'e'"))
+    typeText(injector.parser.parseKeys("dQ"))
+    assertState("${c}two three\n")
+    typeText(injector.parser.parseKeys("w" + "dQ"))
+    assertState("two$c \n")
+  }
+
+  fun `test expression mapping result waiting for argument`() {
+    configureByText("${c}one two three\n")
+    typeText(commandToKeys("nnoremap <expr> Q 'dfe'"))
+    typeText(injector.parser.parseKeys("Q"))
+    assertState("${c} two three\n")
+  }
+
+  fun `test expression mapping with different results`() {
+    configureByText("${c}abcdef\n")
+    executeScript(
+      """
+      let g:n = 0
+      function! Next()
+        let g:n += 1
+        return g:n % 2 ? 'l' : 'x'
+      endfunction
+      nnoremap <expr> Q Next()
+      """.trimIndent()
+    )
+    typeText(injector.parser.parseKeys("QQ"))
+    assertState("a${c}cdef\n")
+    typeText(injector.parser.parseKeys("QQ"))
+    assertState("ac${c}ef\n")
+  }
+
+  fun `test expression mapping with more results than cached`() {
+    configureByText("${c}" + "x".repeat(30) + "\n")
+    executeScript(
+      """
+      let g:n = 0
+      function! Column()
+        let g:n += 1
+        return g:n . '|'
+      endfunction
+      nnoremap <expr> Q Column()
+      """.trimIndent()
+    )
+    typeText(injector.parser.parseKeys("Q".repeat(20)))
+    assertOffset(19)
+    typeText(commandToKeys("let g:n = 1"))
+    typeText(injector.parser.parseKeys("Q"))
+    assertOffset(1)
+  }
+
+  private fun executeScript(script: String) {
+    injector.fimscriptExecutor.execute(
+      script, myFixture.editor.fim, DataContext.EMPTY_CONTEXT.fim, skipHistory = true, indicateErrors = true, null
+    )
+  }
 }
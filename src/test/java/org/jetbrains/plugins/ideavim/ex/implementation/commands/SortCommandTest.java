@@ -120,4 +120,85 @@ public class SortCommandTest extends FimTestCase {
     typeText(commandToKeys("sort"));
     assertState(" a\n b\n c\n whatever\n zee");
   }
+
+  public void testUniqueSort() {
+    configureByText("b\na\nb\nc\na");
+    typeText(commandToKeys("sort u"));
+    assertState("a\nb\nc");
+  }
+
+  public void testUniqueCaseInsensitiveSort() {
+    configureByText("b\nA\nB\na");
+    typeText(commandToKeys("sort ui"));
+    assertState("A\nb");
+  }
+
+  public void testUniqueNumberSort() {
+    configureByText("x2\ny10\nz2\nw");
+    typeText(commandToKeys("sort nu"));
+    assertState("w\nx2\nz2\ny10");
+  }
+
+  public void testUniqueNumberSortOfIdenticalLines() {
+    configureByText("x2\ny10\nx2\nw");
+    typeText(commandToKeys("sort nu"));
+    assertState("w\nx2\ny10");
+  }
+
+  public void testNegativeNumberSort() {
+    configureByText("5\n-10\nfoo\n0");
+    typeText(commandToKeys("sort n"));
+    assertState("foo\n-10\n0\n5");
+  }
+
+  public void testNumberSortOfLargeNumbers() {
+    configureByText("30000000000\n2\n99999999999999999999999");
+    typeText(commandToKeys("sort n"));
+    assertState("2\n30000000000\n99999999999999999999999");
+  }
+
+  public void testSortAfterPattern() {
+    configureByText("a3 c\nb1 b\nc2 a");
+    typeText(commandToKeys("sort /\\w\\+ /"));
+    assertState("c2 a\nb1 b\na3 c");
+  }
+
+  public void testSortOnPattern() {
+    configureByText("a3 c\nb1 b\nc2 a");
+    typeText(commandToKeys("sort /\\d/ r"));
+    assertState("b1 b\nc2 a\na3 c");
+  }
+
+  public void testNumberSortOnPattern() {
+    configureByText("x 10 y 3\nx 2 y 20\nx 1 y 1");
+    typeText(commandToKeys("sort n /y/"));
+    assertState("x 1 y 1\nx 10 y 3\nx 2 y 20");
+  }
+
+  public void testLinesWithoutMatchComeFirst() {
+    configureByText("b: 2\nnone\na: 1");
+    typeText(commandToKeys("sort /: /"));
+    assertState("none\na: 1\nb: 2");
+  }
+
+  public void testSortIsSingleUndoStep() {
+    configureByText("c\nb\na");
+    typeText(commandToKeys("sort"));
+    typeText(FimInjectorKt.getInjector().getParser().parseKeys("u"));
+    assertState("c\nb\na");
+  }
+
+  @TestWithoutNeofim(reason = SkipNeofimReason.NOT_VIM_TESTING)
+  public void testSortOfLargeRange() {
+    final StringBuilder text = new StringBuilder();
+    final StringBuilder expected = new StringBuilder();
+    final int count = 200_000;
+    for (int i = 0; i < count; i++) {
+      text.append(count - i - 1).append(i < count - 1 ? "\n" : "");
+      expected.append(i).append(i < count - 1 ? "\n" : "");
+    }
+    configureByText(text.toString());
+    typeText(commandToKeys("sort n"));
+    assertState(expected.toString());
+  }
 }
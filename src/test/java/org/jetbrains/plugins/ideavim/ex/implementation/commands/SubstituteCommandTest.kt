@@ -908,6 +908,26 @@ class SubstituteCommandTest : FimOptionTestCase(OptionConstants.smartcaseName, O
     )
   }
 
+  @FimOptionDefaultAll
+  @TestWithoutNeofim(reason = SkipNeofimReason.OPTION)
+  fun `test substitute with expression for many matches`() {
+    configureByText(
+      """
+      ${c}1 2 3
+      10 20 30
+      100 200 300
+      """.trimIndent()
+    )
+    typeText(commandToKeys("%s/\\d\\+/\\=submatch(0)*2/g"))
+    assertState(
+      """
+      2 4 6
+      20 40 60
+      ${c}200 400 600
+      """.trimIndent()
+    )
+  }
+
   @FimOptionDefaultAll
   @TestWithoutNeofim(reason = SkipNeofimReason.OPTION)
   fun `test exception during expression evaluation`() {
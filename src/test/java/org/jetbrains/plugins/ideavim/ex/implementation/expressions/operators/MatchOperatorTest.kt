@@ -0,0 +1,83 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.ex.implementation.expressions.operators
+
+import com.flop.idea.fim.fimscript.services.PatternService
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+
+class MatchOperatorTest : FimTestCase() {
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test match in the middle of the string`() {
+    assertTrue(PatternService.matches("b\\+c", "aaabbbccc"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test no match`() {
+    assertFalse(PatternService.matches("x\\+y", "aaabbbccc"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test start of line is only at the start of the string`() {
+    assertTrue(PatternService.matches("^foo", "foobar"))
+    assertFalse(PatternService.matches("^bar", "foobar"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test end of line`() {
+    assertTrue(PatternService.matches("bar$", "foobar"))
+    assertFalse(PatternService.matches("foo$", "foobar"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test ignore case`() {
+    assertTrue(PatternService.matches("BAR", "foobar", ignoreCase = true))
+    assertFalse(PatternService.matches("BAR", "foobar", ignoreCase = false))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test long string`() {
+    val text = "a".repeat(100_000) + "needle"
+    assertTrue(PatternService.matches("need\\a\\+", text))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test required substring`() {
+    assertTrue(PatternService.matches("a\\+needle\\d", "aaaneedle1"))
+    assertFalse(PatternService.matches("a\\+needle\\d", "aaaneedlex"))
+    assertTrue(PatternService.matches("NEEDLE", "aaaneedle", ignoreCase = true))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test alternation start characters`() {
+    assertTrue(PatternService.matches("foo\\|bar", "xxxbar"))
+    assertTrue(PatternService.matches("\\<foo\\|\\(bar\\)", "xxx bar"))
+    assertTrue(PatternService.matches("foo\\|BAR", "xxxbar", ignoreCase = true))
+    assertFalse(PatternService.matches("foo\\|bar", "xxxbaz"))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test operator`() {
+    configureByText("\n")
+    typeText(commandToKeys("echo 'foobar' =~ 'o\\+b' 'foobar' =~ '^bar'"))
+    assertExOutput("1 0\n")
+  }
+}
@@ -738,4 +738,78 @@ class FunctionDeclarationTest : FimTestCase() {
     typeText(commandToKeys("echo ZeroGenerator()"))
     assertExOutput("0\n")
   }
+
+  fun `test recursive call does not change variables of the caller`() {
+    configureByText("\n")
+    typeText(
+      commandToKeys(
+        "" +
+          "function Factorial(n) |" +
+          "  let result = a:n | " +
+          "  if a:n > 1 | " +
+          "    let result = result * Factorial(a:n - 1) | " +
+          "  endif | " +
+          "  return result | " +
+          "endfunction"
+      )
+    )
+    typeText(commandToKeys("echo Factorial(5)"))
+    assertExOutput("120\n")
+
+    typeText(commandToKeys("delf! Factorial"))
+  }
+
+  fun `test local variables are not kept between calls`() {
+    configureByText("\n")
+    typeText(
+      commandToKeys(
+        "" +
+          "function Counter() |" +
+          "  try | " +
+          "    let result = l:count | " +
+          "  catch | " +
+          "    let result = 0 | " +
+          "  endtry | " +
+          "  let count = 1 | " +
+          "  return result | " +
+          "endfunction"
+      )
+    )
+    typeText(commandToKeys("echo Counter() Counter()"))
+    assertExOutput("0 0\n")
+
+    typeText(commandToKeys("delf! Counter"))
+  }
+
+  fun `test closure keeps variables of the enclosing call`() {
+    configureByText("\n")
+    typeText(
+      commandToKeys(
+        "" +
+          "function MakeAdder(n) |" +
+          "  let step = a:n | " +
+          "  return {x -> x + step} | " +
+          "endfunction"
+      )
+    )
+    typeText(commandToKeys("let Add2 = MakeAdder(2) | let Add5 = MakeAdder(5) | echo Add2(1) Add5(1)"))
+    assertExOutput("3 6\n")
+
+    typeText(commandToKeys("delf! MakeAdder"))
+  }
+
+  fun `test call site calls redefined function`() {
+    configureByText("\n")
+    typeText(commandToKeys("function F() | return 1 | endfunction"))
+    typeText(commandToKeys("function G() | return F() | endfunction"))
+    typeText(commandToKeys("echo G()"))
+    assertExOutput("1\n")
+
+    typeText(commandToKeys("function! F() | return 2 | endfunction"))
+    typeText(commandToKeys("echo G()"))
+    assertExOutput("2\n")
+
+    typeText(commandToKeys("delf! F"))
+    typeText(commandToKeys("delf! G"))
+  }
 }
@@ -18,6 +18,12 @@
 
 package org.jetbrains.plugins.ideafim.group
 
+import com.intellij.ide.plugins.DynamicPluginListener
+import com.intellij.ide.plugins.PluginManagerCore
+import com.intellij.openapi.actionSystem.IdeActions
+import com.intellij.openapi.actionSystem.KeyboardShortcut
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.keymap.ex.KeymapManagerEx
 import com.flop.idea.fim.FimPlugin
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.MappingMode
@@ -25,6 +31,9 @@ import com.flop.idea.fim.key.MappingOwner
 import org.jetbrains.plugins.ideafim.SkipNeofimReason
 import org.jetbrains.plugins.ideafim.TestWithoutNeofim
 import org.jetbrains.plugins.ideafim.FimTestCase
+import java.awt.event.InputEvent
+import java.awt.event.KeyEvent
+import javax.swing.KeyStroke
 
 class KeyGroupTest : FimTestCase() {
   private val owner = MappingOwner.Plugin.get("KeyGroupTest")
@@ -67,4 +76,39 @@ class KeyGroupTest : FimTestCase() {
     typeText(keys)
     assertState("${c}I found it in a legendary land")
   }
+
+  @TestWithoutNeofim(reason = SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test keymap conflicts are updated when a shortcut is added`() {
+    val keyGroup = com.flop.idea.fim.FimPlugin.getKey()
+    val keyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_F11, InputEvent.CTRL_DOWN_MASK or InputEvent.ALT_DOWN_MASK or InputEvent.SHIFT_DOWN_MASK)
+    val shortcut = KeyboardShortcut(keyStroke, null)
+    val keymap = KeymapManagerEx.getInstanceEx().activeKeymap
+    assertFalse(keyGroup.hasKeymapConflicts(keyStroke))
+
+    keymap.addShortcut(IdeActions.ACTION_EDITOR_COPY, shortcut)
+    try {
+      assertTrue(keyGroup.hasKeymapConflicts(keyStroke))
+    } finally {
+      keymap.removeShortcut(IdeActions.ACTION_EDITOR_COPY, shortcut)
+    }
+    assertFalse(keyGroup.hasKeymapConflicts(keyStroke))
+  }
+
+  @TestWithoutNeofim(reason = SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test keymap conflicts are reset when a plugin is loaded or unloaded`() {
+    val keyGroup = com.flop.idea.fim.FimPlugin.getKey()
+    val keyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_F11, InputEvent.CTRL_DOWN_MASK or InputEvent.ALT_DOWN_MASK)
+    val plugin = PluginManagerCore.getPlugin(PluginManagerCore.CORE_ID)!!
+    val publisher = ApplicationManager.getApplication().messageBus.syncPublisher(DynamicPluginListener.TOPIC)
+
+    keyGroup.hasKeymapConflicts(keyStroke)
+    assertTrue(keyGroup.hasCachedKeymapConflicts())
+    publisher.pluginLoaded(plugin)
+    assertFalse(keyGroup.hasCachedKeymapConflicts())
+
+    keyGroup.hasKeymapConflicts(keyStroke)
+    assertTrue(keyGroup.hasCachedKeymapConflicts())
+    publisher.pluginUnloaded(plugin, false)
+    assertFalse(keyGroup.hasCachedKeymapConflicts())
+  }
 }
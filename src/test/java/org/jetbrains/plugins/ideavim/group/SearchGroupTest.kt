@@ -19,16 +19,19 @@
 package org.jetbrains.plugins.ideafim.group
 
 import com.intellij.idea.TestFor
+import com.intellij.openapi.application.impl.NonBlockingReadActionImpl
 import com.intellij.openapi.editor.colors.EditorColors
 import com.intellij.openapi.editor.colors.EditorColorsManager
 import com.intellij.openapi.editor.markup.EffectType
 import com.intellij.openapi.util.Ref
+import com.intellij.testFramework.PlatformTestUtil
 import com.flop.idea.fim.FimPlugin
 import com.flop.idea.fim.action.motion.search.SearchWholeWordForwardAction
 import com.flop.idea.fim.api.injector
 import com.flop.idea.fim.command.FimStateMachine
 import com.flop.idea.fim.common.Direction
 import com.flop.idea.fim.helper.RunnableHelper
+import com.flop.idea.fim.helper.fimLastHighlighters
 import com.flop.idea.fim.newapi.fim
 import com.flop.idea.fim.options.OptionConstants
 import com.flop.idea.fim.options.OptionScope
@@ -1075,6 +1078,138 @@ class SearchGroupTest : FimTestCase() {
     )
   }
 
+  fun `test hlsearch highlights match in inserted line`() {
+    setHighlightSearch()
+    configureByText(
+      """I found it in a legendary land
+         |${c}all rocks and lavender and tufted grass,
+         |where it was settled on some sodden sand
+         |hard by the torrent of a mountain pass.""".trimMargin()
+    )
+
+    val pattern = "and"
+    enterSearch(pattern)
+    typeText(injector.parser.parseKeys("O" + "hand" + "<Esc>"))
+
+    assertSearchHighlights(
+      pattern,
+      """I found it in a legendary l«and»
+           |h«and»
+           |all rocks «and» lavender «and» tufted grass,
+           |where it was settled on some sodden s«and»
+           |hard by the torrent of a mountain pass.""".trimMargin()
+    )
+  }
+
+  fun `test hlsearch highlights are updated after deleting line`() {
+    setHighlightSearch()
+    configureByText(
+      """I found it in a legendary land
+         |${c}all rocks and lavender and tufted grass,
+         |where it was settled on some sodden sand
+         |hard by the torrent of a mountain pass.""".trimMargin()
+    )
+
+    val pattern = "and"
+    enterSearch(pattern)
+    typeText(injector.parser.parseKeys("dd" + "A and<Esc>" + "j" + "A land<Esc>"))
+
+    assertSearchHighlights(
+      pattern,
+      """I found it in a legendary l«and»
+           |where it was settled on some sodden s«and» «and»
+           |hard by the torrent of a mountain pass. l«and»""".trimMargin()
+    )
+  }
+
+  fun `test deleting lines with matches outside the changed line removes their highlights`() {
+    setHighlightSearch()
+    configureByText(
+      """I found it in a legendary land
+         |${c}all rocks and lavender and tufted grass,
+         |where it was settled on some sodden sand
+         |hard by the torrent of a mountain pass.""".trimMargin()
+    )
+
+    val pattern = "and"
+    enterSearch(pattern)
+    typeText(injector.parser.parseKeys("2dd" + "A and<Esc>" + "k" + "A and<Esc>"))
+
+    assertSearchHighlights(
+      pattern,
+      """I found it in a legendary l«and» «and»
+           |hard by the torrent of a mountain pass. «and»""".trimMargin()
+    )
+    val highlighters = myFixture.editor.fimLastHighlighters!!.toList()
+    assertTrue(highlighters.all { it.isValid })
+    assertEquals(highlighters.sortedBy { it.startOffset }, highlighters)
+  }
+
+  fun `test deleting matches inside a line removes their highlights`() {
+    setHighlightSearch()
+    configureByText("foo foo foo foo\nbar foo\nfoo")
+
+    val pattern = "foo"
+    enterSearch(pattern)
+    typeText(injector.parser.parseKeys("gg" + "w" + "2dw" + "j0" + "dw"))
+
+    assertSearchHighlights(pattern, "«foo» «foo»\n«foo»\n«foo»")
+    val highlighters = myFixture.editor.fimLastHighlighters!!.toList()
+    assertEquals(4, highlighters.size)
+    assertTrue(highlighters.all { it.isValid })
+    assertEquals(highlighters.sortedBy { it.startOffset }, highlighters)
+  }
+
+  fun `test changing the end of a multiline match removes its highlight`() {
+    setHighlightSearch()
+    configureByText("foo\nbar\n${c}baz\nfoo\nbar")
+
+    val pattern = "foo\\nbar"
+    enterSearch(pattern)
+    assertSearchHighlights(pattern, "«foo\nbar»\nbaz\n«foo\nbar»")
+    typeText(injector.parser.parseKeys("gg" + "j" + "l" + "rx"))
+
+    assertSearchHighlights(pattern, "foo\nbxr\nbaz\n«foo\nbar»")
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test hlsearch in a large file highlights the visible lines first`() {
+    setHighlightSearch()
+    configureByText("${c}foo\n".repeat(LARGE_FILE_LINES))
+
+    enterSearch("foo")
+    // The rest of the file is highlighted by a background task that is not finished yet
+    val visibleHighlights = myFixture.editor.fimLastHighlighters!!.size
+    assertTrue(visibleHighlights > 0)
+    assertTrue(visibleHighlights < LARGE_FILE_LINES)
+
+    NonBlockingReadActionImpl.waitForAsyncTaskCompletion()
+    PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue()
+    assertEquals(LARGE_FILE_LINES, myFixture.editor.fimLastHighlighters!!.size)
+  }
+
+  fun `test hlsearch highlights are updated after macro`() {
+    setHighlightSearch()
+    configureByText(
+      """I found it in a legendary land
+         |${c}all rocks and lavender and tufted grass,
+         |where it was settled on some sodden sand
+         |hard by the torrent of a mountain pass.""".trimMargin()
+    )
+
+    val pattern = "and"
+    enterSearch(pattern)
+    typeText(injector.parser.parseKeys("qa" + "A and<Esc>" + "j" + "q" + "2@a"))
+
+    assertSearchHighlights(
+      pattern,
+      """I found it in a legendary l«and»
+           |all rocks «and» lavender «and» tufted grass, «and»
+           |where it was settled on some sodden s«and» «and»
+           |hard by the torrent of a mountain pass. «and»""".trimMargin()
+    )
+  }
+
   fun `test nohlsearch correctly resets incsearch highlights after deleting last occurrence`() {
     // Crazy edge case bug. With incsearch enabled, search for something with only one occurrence, delete it, call
     // :nohlsearch, undo and search next - highlights don't work any more
@@ -1525,4 +1660,8 @@ class SearchGroupTest : FimTestCase() {
       }
     }
   }
+
+  companion object {
+    private const val LARGE_FILE_LINES = 6000
+  }
 }
@@ -0,0 +1,113 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.key
+
+import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.command.MappingState
+import com.flop.idea.fim.key.KeyMapping
+import com.flop.idea.fim.key.MappingOwner
+import com.flop.idea.fim.key.ToKeysMappingInfo
+import org.jetbrains.plugins.ideafim.FimTestCase
+
+class KeyMappingTest : FimTestCase() {
+  private val owner = MappingOwner.Plugin.get("KeyMappingTest")
+
+  fun `test mapping added while a prefix is pending`() {
+    val mapping = KeyMapping()
+    mapping.put(keys("ab"), keys("x"), owner, false)
+    val state = typed("a")
+    assertTrue(mapping.isPrefix(state))
+
+    mapping.delete()
+    mapping.put(keys("ac"), keys("y"), owner, false)
+    assertTrue(mapping.isPrefix(state))
+    state.addKey(keys("c")[0])
+    assertEquals(keys("y"), toKeys(mapping, state))
+  }
+
+  fun `test mapping removed while a prefix is pending`() {
+    val mapping = KeyMapping()
+    mapping.put(keys("ab"), keys("x"), owner, false)
+    val state = typed("a")
+    assertTrue(mapping.isPrefix(state))
+
+    mapping.delete(keys("ab"))
+    assertFalse(mapping.isPrefix(state))
+
+    mapping.put(keys("ab"), keys("y"), owner, false)
+    assertTrue(mapping.isPrefix(state))
+    state.addKey(keys("b")[0])
+    assertEquals(keys("y"), toKeys(mapping, state))
+  }
+
+  fun `test unmap of a prefix owner`() {
+    val prefixOwner = MappingOwner.Plugin.get("KeyMappingTest prefix")
+    val mapping = KeyMapping()
+    mapping.put(keys("ab"), keys("x"), prefixOwner, false)
+    mapping.put(keys("abc"), keys("y"), owner, false)
+
+    mapping.delete(prefixOwner)
+    assertNull(mapping[keys("ab")])
+    assertTrue(mapping.isPrefix(keys("ab")))
+    assertEquals(keys("y"), (mapping[keys("abc")] as ToKeysMappingInfo).toKeys)
+
+    val state = typed("ab")
+    assertTrue(mapping.isPrefix(state))
+    assertNull(mapping.getLayer(state))
+  }
+
+  fun `test unmap of the mapping a prefix leads to`() {
+    val prefixOwner = MappingOwner.Plugin.get("KeyMappingTest prefix")
+    val mapping = KeyMapping()
+    mapping.put(keys("ab"), keys("x"), prefixOwner, false)
+    mapping.put(keys("abc"), keys("y"), owner, false)
+    val state = typed("ab")
+    assertTrue(mapping.isPrefix(state))
+
+    mapping.delete(owner)
+    assertFalse(mapping.isPrefix(state))
+    assertEquals(keys("x"), toKeys(mapping, state))
+  }
+
+  fun `test mode switch resets the cursor`() {
+    val normal = KeyMapping()
+    normal.put(keys("ab"), keys("x"), owner, false)
+    val insert = KeyMapping()
+    insert.put(keys("a"), keys("y"), owner, false)
+    val state = typed("a")
+    assertTrue(normal.isPrefix(state))
+
+    // The same typed keys are looked up in the mapping of another mode
+    assertFalse(insert.isPrefix(state))
+    assertEquals(keys("y"), toKeys(insert, state))
+    state.addKey(keys("b")[0])
+    assertNull(insert.getLayer(state))
+    assertEquals(keys("x"), toKeys(normal, state))
+  }
+
+  private fun keys(keys: String) = injector.parser.parseKeys(keys)
+
+  private fun typed(keys: String): MappingState {
+    val state = MappingState()
+    keys(keys).forEach { state.addKey(it) }
+    return state
+  }
+
+  private fun toKeys(mapping: KeyMapping, state: MappingState) = (mapping.getLayer(state) as ToKeysMappingInfo).toKeys
+}
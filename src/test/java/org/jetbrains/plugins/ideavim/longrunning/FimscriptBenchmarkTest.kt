@@ -0,0 +1,187 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.longrunning
+
+import com.intellij.openapi.actionSystem.DataContext
+import com.flop.idea.fim.api.injector
+import com.flop.idea.fim.fimscript.model.Script
+import com.flop.idea.fim.fimscript.model.datatypes.FimDataType
+import com.flop.idea.fim.fimscript.model.datatypes.FimInt
+import com.flop.idea.fim.fimscript.model.datatypes.FimString
+import com.flop.idea.fim.fimscript.parser.FimscriptParser
+import com.flop.idea.fim.newapi.fim
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+import java.io.File
+import java.util.*
+
+/**
+ * Benchmarks of the fimscript interpreter.
+ *
+ * Every benchmark is warmed up and then measured several times, the median time is printed with the baseline stored
+ * in [BASELINES_FILE]. Timings depend on the machine, so the baselines are only checked when the tests are run with
+ * `-PcheckBenchmarkBaselines`: a benchmark then fails if it is more than [MAX_SLOWDOWN] times slower than its baseline.
+ * Run the tests with `-PupdateBenchmarkBaselines` to store the measured times as the new baselines of the machine.
+ * Parsing is measured by [ScriptParserBenchmarkTest].
+ */
+class FimscriptBenchmarkTest : FimTestCase() {
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test expression evaluation`() {
+    val expression = FimscriptParser.parseExpression("((17 + 4 * 3 - 8 / 2) % 7 + 1.5) * 2 == 11.0 && 'abc' . 'def' == 'abcdef'")!!
+    configureByText("\n")
+    val editor = myFixture.editor.fim
+    val context = DataContext.EMPTY_CONTEXT.fim
+    val script = Script()
+    assertEquals(FimInt(1), expression.evaluate(editor, context, script))
+    benchmark("expression") {
+      repeat(LOOP_SIZE) { expression.evaluate(editor, context, script) }
+    }
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test while loop`() {
+    benchmarkScript(
+      "while",
+      """
+        let i = 0
+        while i < $LOOP_SIZE
+          let i += 1
+        endwhile
+      """.trimIndent()
+    )
+    assertGlobalVariable("i", FimInt(LOOP_SIZE))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test for loop`() {
+    benchmarkScript(
+      "for",
+      """
+        let sum = 0
+        for x in [${(0 until LOOP_SIZE).joinToString()}]
+          let sum += x
+        endfor
+      """.trimIndent()
+    )
+    assertGlobalVariable("sum", FimInt(LOOP_SIZE * (LOOP_SIZE - 1) / 2))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test function calls`() {
+    benchmarkScript(
+      "function call",
+      """
+        function! BenchmarkAdd(a, b)
+          let result = a:a + a:b
+          return result
+        endfunction
+        let i = 0
+        while i < $LOOP_SIZE
+          let i = BenchmarkAdd(i, 1)
+        endwhile
+      """.trimIndent()
+    )
+    assertGlobalVariable("i", FimInt(LOOP_SIZE))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test dictionary and list operations`() {
+    benchmarkScript(
+      "dictionary and list",
+      """
+        let dict = {}
+        let list = [1, 2, 3]
+        let total = 0
+        let i = 0
+        while i < $LOOP_SIZE
+          let dict['key' . i] = i
+          let total += dict['key' . i] + list[i % 3]
+          let i += 1
+        endwhile
+      """.trimIndent()
+    )
+    assertGlobalVariable("total", FimInt(LOOP_SIZE * (LOOP_SIZE - 1) / 2 + (0 until LOOP_SIZE).sumOf { it % 3 + 1 }))
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test string concatenation`() {
+    benchmarkScript(
+      "string concatenation",
+      """
+        let text = ''
+        let i = 0
+        while i < $LOOP_SIZE
+          let text .= 'x'
+          let i += 1
+        endwhile
+      """.trimIndent()
+    )
+    assertGlobalVariable("text", FimString("x".repeat(LOOP_SIZE)))
+  }
+
+  private fun benchmarkScript(name: String, text: String) {
+    configureByText("\n")
+    val editor = myFixture.editor.fim
+    val context = DataContext.EMPTY_CONTEXT.fim
+    val script = FimscriptParser.parse(text)
+    benchmark(name) { script.execute(editor, context) }
+  }
+
+  private fun assertGlobalVariable(name: String, expected: FimDataType) {
+    assertEquals(expected, injector.variableService.getGlobalVariableValue(name))
+  }
+
+  private fun benchmark(name: String, operation: () -> Unit) {
+    repeat(WARMUP_ITERATIONS) { operation() }
+    val times = LongArray(ITERATIONS) {
+      val start = System.nanoTime()
+      operation()
+      System.nanoTime() - start
+    }
+    times.sort()
+    val median = times[times.size / 2] / 1000
+
+    val baselines = Properties()
+    if (BASELINES_FILE.exists()) {
+      BASELINES_FILE.inputStream().use { baselines.load(it) }
+    }
+    val baseline = baselines.getProperty(name)?.toLongOrNull()
+    println("Fimscript benchmark '$name': $median µs (baseline: ${baseline?.let { "$it µs" } ?: "none"})")
+
+    if (System.getProperty("ideafim.benchmark.update") == "true") {
+      baselines.setProperty(name, median.toString())
+      BASELINES_FILE.parentFile.mkdirs()
+      BASELINES_FILE.outputStream().use { baselines.store(it, "Median times of FimscriptBenchmarkTest in microseconds") }
+    } else if (baseline != null && System.getProperty("ideafim.benchmark.check") == "true") {
+      assertTrue(
+        "Benchmark '$name' took $median µs, more than $MAX_SLOWDOWN times its baseline of $baseline µs",
+        median <= baseline * MAX_SLOWDOWN
+      )
+    }
+  }
+
+  companion object {
+    private const val LOOP_SIZE = 1_000
+    private const val WARMUP_ITERATIONS = 10
+    private const val ITERATIONS = 20
+    private const val MAX_SLOWDOWN = 2
+    private val BASELINES_FILE = File("src/test/resources/benchmarks/fimscript.properties")
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.longrunning
+
+import com.flop.idea.fim.helper.SearchHelper
+import com.flop.idea.fim.helper.SearchMatchIndex
+import com.flop.idea.fim.regexp.TextLines
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+
+/**
+ * Checks that the parallel search of a large document finds the same matches as the sequential one
+ */
+class FindAllTest : FimTestCase() {
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test single line matches`() {
+    assertSameMatches("foo bar\nbaz foo foo\n".repeat(LINES / 2), "foo")
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test zero width matches`() {
+    assertSameMatches("foo bar\n\nbaz\n".repeat(LINES / 3), "^")
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test matches crossing chunk borders`() {
+    // Every match spans 7 lines, so matches start at a different line of every chunk
+    assertSameMatches("start\n1\n2\n3\n4\n5\nend start\n".repeat(LINES / 7), "start\\_.\\{-}end")
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test match covering several chunks`() {
+    val text = "a\n".repeat(LINES / 2) + "x\n" + "b\n".repeat(LINES / 2) + "y x\n"
+    assertSameMatches(text, "a\\_.*x\\|x")
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test match index of a large document`() {
+    // Above the parallel threshold, the index searches the unsearched lines in parallel
+    configureByText("foo bar\nbaz foo foo\n".repeat(LINES * 2))
+    val editor = myFixture.editor
+    val lineCount = editor.document.lineCount
+    val index = SearchMatchIndex("foo", false)
+    val visible = index.matches(editor, 100, 120)
+    val all = index.matches(editor, 0, lineCount - 1)
+
+    val expected = SearchHelper.findAll(TextLines(editor.document.text), lineCount, "foo", 0, lineCount, false, null)
+    assertEquals(expected.map { it.startOffset to it.endOffset }, all.map { it.startOffset to it.endOffset })
+    val visibleRange = editor.document.getLineStartOffset(100)..editor.document.getLineEndOffset(120)
+    assertEquals(
+      all.filter { it.startOffset in visibleRange }.map { it.startOffset to it.endOffset },
+      visible.map { it.startOffset to it.endOffset }
+    )
+  }
+
+  private fun assertSameMatches(text: String, pattern: String) {
+    configureByText(text)
+    val lineCount = myFixture.editor.document.lineCount
+
+    // The document is below the parallel threshold, so this is a sequential search
+    val sequential = SearchHelper.findAll(myFixture.editor, pattern, 0, -1, false)
+    val parallel = SearchHelper.findAll(TextLines(text), lineCount, pattern, 0, lineCount, false, null)
+
+    assertTrue(parallel.isNotEmpty())
+    assertEquals(sequential.map { it.startOffset to it.endOffset }, parallel.map { it.startOffset to it.endOffset })
+  }
+
+  companion object {
+    private const val LINES = 14_000
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.longrunning
+
+import com.flop.idea.fim.fimscript.parser.FimscriptParser
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+
+/**
+ * Measures the parsing of large scripts with and without syntax errors
+ */
+class ScriptParserBenchmarkTest : FimTestCase() {
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test parse large script`() {
+    val script = (0 until LINES).joinToString("\n") { statement(it) }
+
+    val (time, size) = parse(script)
+
+    println("Parse of $LINES lines without errors: $time ms")
+    assertEquals(LINES, size)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test parse large script with errors`() {
+    val script = (0 until LINES).joinToString("\n") { if (it % ERROR_EVERY == 0) "echo (*" else statement(it) }
+
+    val (time, size) = parse(script)
+
+    println("Parse of $LINES lines with ${LINES / ERROR_EVERY} errors: $time ms")
+    assertEquals(LINES - LINES / ERROR_EVERY, size)
+  }
+
+  private fun statement(index: Int): String {
+    return when (index % 3) {
+      0 -> "let g:var$index = $index + 1"
+      1 -> "nnoremap <leader>$index :echo $index<CR>"
+      else -> "set scrolloff=$index"
+    }
+  }
+
+  private fun parse(script: String): Pair<Long, Int> {
+    // Warm up the parser, so the time of the ATN initialization isn't included. The warm-up script differs from the
+    // measured one, otherwise the measured parse would reuse the cached parse tree
+    FimscriptParser.parse("\" warm up\n$script")
+    val start = System.currentTimeMillis()
+    val size = FimscriptParser.parse(script).units.size
+    return System.currentTimeMillis() - start to size
+  }
+
+  companion object {
+    private const val LINES = 2_000
+    private const val ERROR_EVERY = 100
+  }
+}
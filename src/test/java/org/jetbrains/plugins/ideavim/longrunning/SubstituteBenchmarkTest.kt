@@ -0,0 +1,55 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.longrunning
+
+import com.flop.idea.fim.FimPlugin
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+
+/**
+ * Compares the batched and the match-by-match execution of the same `:substitute` on a large buffer
+ */
+class SubstituteBenchmarkTest : FimTestCase() {
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test batched and sequential substitute`() {
+    val text = "foo bar foo baz\n".repeat(LINES)
+
+    FimPlugin.getSearch().setSubstituteMatchByMatch(true)
+    val (sequentialTime, sequentialResult) = substitute(text, "%s/foo/quux/g")
+    FimPlugin.getSearch().setSubstituteMatchByMatch(false)
+    val (batchedTime, batchedResult) = substitute(text, "%s/foo/quux/g")
+
+    println("Substitute of ${LINES * 2} matches: sequential $sequentialTime ms, batched $batchedTime ms")
+    assertEquals(sequentialResult, batchedResult)
+    assertEquals("quux bar quux baz\n".repeat(LINES), batchedResult)
+  }
+
+  private fun substitute(text: String, command: String): Pair<Long, String> {
+    configureByText(text)
+    val start = System.currentTimeMillis()
+    typeText(commandToKeys(command))
+    val time = System.currentTimeMillis() - start
+    return time to myFixture.editor.document.text
+  }
+
+  companion object {
+    private const val LINES = 10_000
+  }
+}
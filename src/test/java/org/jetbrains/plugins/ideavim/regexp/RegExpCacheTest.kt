@@ -0,0 +1,93 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2022 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.ideafim.regexp
+
+import com.flop.idea.fim.regexp.RegExpCache
+import com.flop.idea.fim.fimscript.services.PatternService
+import org.jetbrains.plugins.ideafim.SkipNeofimReason
+import org.jetbrains.plugins.ideafim.TestWithoutNeofim
+import org.jetbrains.plugins.ideafim.FimTestCase
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class RegExpCacheTest : FimTestCase() {
+  override fun setUp() {
+    super.setUp()
+    RegExpCache.clear()
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test same pattern returns same program`() {
+    val first = RegExpCache.compile("foo\\d\\+")
+    val second = RegExpCache.compile("foo\\d\\+")
+    assertNotNull(first)
+    assertSame(first, second)
+    assertEquals(1L, RegExpCache.hits)
+    assertEquals(1L, RegExpCache.misses)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test magic is part of the key`() {
+    val magic = RegExpCache.compile("a*", 1)
+    val nomagic = RegExpCache.compile("a*", 0)
+    assertNotSame(magic, nomagic)
+    assertEquals(2L, RegExpCache.misses)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test invalid pattern is not cached`() {
+    assertNull(RegExpCache.compile("\\(foo"))
+    assertNull(RegExpCache.compile("\\(foo"))
+    assertEquals(0L, RegExpCache.hits)
+    assertEquals(2L, RegExpCache.misses)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test repeated search reuses compiled pattern`() {
+    doTest(
+      "/bar<CR>nn",
+      """
+        ${c}foo bar
+        foo bar
+        foo bar
+      """.trimIndent(),
+      """
+        foo bar
+        foo bar
+        foo ${c}bar
+      """.trimIndent()
+    )
+    assertTrue(RegExpCache.hits > 0)
+  }
+
+  @TestWithoutNeofim(SkipNeofimReason.NOT_VIM_TESTING)
+  fun `test cached program is shared by concurrent matchers`() {
+    RegExpCache.compile("ba\\+r")
+    val executor = Executors.newFixedThreadPool(4)
+    try {
+      val results = (0 until 100).map { i ->
+        executor.submit(Callable { PatternService.matches("ba\\+r", if (i % 2 == 0) "foo baaar" else "foo") })
+      }.map { it.get() }
+      assertEquals(50, results.count { it })
+      assertEquals(1L, RegExpCache.misses)
+    } finally {
+      executor.shutdown()
+    }
+  }
+}